@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.collapsed;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.ks.jfr.parser.JfrParsedFile;
+import pl.ks.jfr.parser.SyntheticRecordings;
+import pl.ks.jfr.parser.tuning.AdditionalLevel;
+
+/**
+ * Concurrent adds of collapsed stacks of a recording into one shared {@link CollapsedStack}, the way parallel
+ * aggregations use it. Run with {@code -t} to change the number of contending threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(Threads.MAX)
+@Fork(1)
+public class CollapsedStackBenchmark {
+    private String[] stacks;
+    private CollapsedStack collapsedStack;
+
+    @Setup
+    public void setUp() {
+        JfrParsedFile jfrParsedFile = SyntheticRecordings.parse(SyntheticRecordings.recordings(1));
+        int[] indices = IntStream.range(0, jfrParsedFile.getExecutionSamples().size()).toArray();
+        List<String> collapsedStacks = List.copyOf(jfrParsedFile.asCollapsed(jfrParsedFile.getExecutionSamples(), indices, Set.of(AdditionalLevel.THREAD)).stacks().keySet());
+        stacks = collapsedStacks.toArray(String[]::new);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        collapsedStack = new CollapsedStack();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadPosition {
+        private int position;
+    }
+
+    @Benchmark
+    public void add(ThreadPosition threadPosition) {
+        collapsedStack.add(stacks[Math.floorMod(threadPosition.position++, stacks.length)], 1);
+    }
+}
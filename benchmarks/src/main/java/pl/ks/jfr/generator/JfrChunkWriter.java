@@ -0,0 +1,311 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.generator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Writes JFR files (format 2.0 with compressed integers) chunk by chunk. Every chunk is self-contained: it starts
+ * with a header and ends with the metadata event and one checkpoint event holding all constant pools.
+ */
+class JfrChunkWriter implements Closeable {
+    private static final byte[] MAGIC = {'F', 'L', 'R', 0};
+    private static final short MAJOR_VERSION = 2;
+    private static final short MINOR_VERSION = 0;
+    private static final int HEADER_SIZE = 68;
+    private static final int FEATURE_COMPRESSED_INTS = 1;
+    private static final long METADATA_EVENT_TYPE = 0;
+    private static final long CHECKPOINT_EVENT_TYPE = 1;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer output = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+    private final Buffer event = new Buffer();
+    private final Buffer eventSize = new Buffer(Buffer.MAX_VAR_LONG_LENGTH);
+    private long flushedBytes;
+    private long chunkStart = -1;
+    private long chunkStartNanos;
+
+    JfrChunkWriter(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    void beginChunk(long startNanos) throws IOException {
+        chunkStart = position();
+        chunkStartNanos = startNanos;
+        writeBytes(new byte[HEADER_SIZE], HEADER_SIZE);
+    }
+
+    long chunkBytes() {
+        return position() - chunkStart;
+    }
+
+    Buffer beginEvent(long typeId) {
+        event.reset();
+        event.putVarLong(typeId);
+        return event;
+    }
+
+    void endEvent() throws IOException {
+        int payloadSize = event.size();
+        int sizeLength = 1;
+        while (Buffer.varLongLength(payloadSize + sizeLength) != sizeLength) {
+            sizeLength++;
+        }
+        eventSize.reset();
+        eventSize.putVarLong(payloadSize + sizeLength);
+        writeBytes(eventSize.bytes, eventSize.size());
+        writeBytes(event.bytes, payloadSize);
+    }
+
+    void endChunk(long endNanos, Element metadata, Consumer<Buffer> constantPools) throws IOException {
+        long durationNanos = Math.max(0, endNanos - chunkStartNanos);
+
+        long metadataOffset = chunkBytes();
+        Buffer buffer = beginEvent(METADATA_EVENT_TYPE);
+        buffer.putVarLong(chunkStartNanos);
+        buffer.putVarLong(0);
+        buffer.putVarLong(1);
+        writeMetadata(buffer, metadata);
+        endEvent();
+
+        long checkpointOffset = chunkBytes();
+        buffer = beginEvent(CHECKPOINT_EVENT_TYPE);
+        buffer.putVarLong(endNanos);
+        buffer.putVarLong(0);
+        buffer.putVarLong(0);
+        buffer.putBoolean(true);
+        constantPools.accept(buffer);
+        endEvent();
+
+        flush();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC)
+                .putShort(MAJOR_VERSION)
+                .putShort(MINOR_VERSION)
+                .putLong(chunkBytes())
+                .putLong(checkpointOffset)
+                .putLong(metadataOffset)
+                .putLong(chunkStartNanos)
+                .putLong(durationNanos)
+                .putLong(chunkStartNanos)
+                .putLong(1_000_000_000L)
+                .putInt(FEATURE_COMPRESSED_INTS)
+                .flip();
+        channel.write(header, chunkStart);
+        chunkStart = -1;
+    }
+
+    boolean isInChunk() {
+        return chunkStart >= 0;
+    }
+
+    private static void writeMetadata(Buffer buffer, Element root) {
+        Set<String> strings = new LinkedHashSet<>();
+        root.collectStrings(strings);
+        Map<String, Integer> stringIds = new LinkedHashMap<>();
+        buffer.putVarInt(strings.size());
+        for (String string : strings) {
+            stringIds.put(string, stringIds.size());
+            buffer.putString(string);
+        }
+        root.write(buffer, stringIds);
+    }
+
+    private long position() {
+        return flushedBytes + output.position();
+    }
+
+    private void writeBytes(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (!output.hasRemaining()) {
+                flush();
+            }
+            int toCopy = Math.min(length - offset, output.remaining());
+            output.put(bytes, offset, toCopy);
+            offset += toCopy;
+        }
+    }
+
+    private void flush() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            flushedBytes += channel.write(output, flushedBytes);
+        }
+        output.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    static class Buffer {
+        static final int MAX_VAR_LONG_LENGTH = 9;
+
+        private static final byte STRING_ENCODING_NULL = 0;
+        private static final byte STRING_ENCODING_EMPTY = 1;
+        private static final byte STRING_ENCODING_UTF8 = 3;
+
+        private byte[] bytes;
+        private int size;
+
+        Buffer() {
+            this(256);
+        }
+
+        Buffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        Buffer putByte(byte value) {
+            ensureCapacity(1);
+            bytes[size++] = value;
+            return this;
+        }
+
+        Buffer putBoolean(boolean value) {
+            return putByte(value ? (byte) 1 : 0);
+        }
+
+        Buffer putVarInt(int value) {
+            return putVarLong(value & 0xFFFFFFFFL);
+        }
+
+        Buffer putVarLong(long value) {
+            ensureCapacity(MAX_VAR_LONG_LENGTH);
+            for (int i = 0; i < MAX_VAR_LONG_LENGTH - 1; i++) {
+                if ((value & ~0x7FL) == 0) {
+                    bytes[size++] = (byte) value;
+                    return this;
+                }
+                bytes[size++] = (byte) (value | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+            return this;
+        }
+
+        Buffer putFloat(float value) {
+            int bits = Float.floatToIntBits(value);
+            ensureCapacity(4);
+            bytes[size++] = (byte) (bits >>> 24);
+            bytes[size++] = (byte) (bits >>> 16);
+            bytes[size++] = (byte) (bits >>> 8);
+            bytes[size++] = (byte) bits;
+            return this;
+        }
+
+        Buffer putString(String value) {
+            if (value == null) {
+                return putByte(STRING_ENCODING_NULL);
+            }
+            if (value.isEmpty()) {
+                return putByte(STRING_ENCODING_EMPTY);
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putByte(STRING_ENCODING_UTF8);
+            putVarInt(utf8.length);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+            return this;
+        }
+
+        private void ensureCapacity(int length) {
+            if (size + length > bytes.length) {
+                byte[] newBytes = new byte[Math.max(size + length, bytes.length * 2)];
+                System.arraycopy(bytes, 0, newBytes, 0, size);
+                bytes = newBytes;
+            }
+        }
+
+        static int varLongLength(long value) {
+            int length = 1;
+            while ((value & ~0x7FL) != 0 && length < MAX_VAR_LONG_LENGTH) {
+                value >>>= 7;
+                length++;
+            }
+            return length;
+        }
+    }
+
+    /**
+     * Node of the metadata tree, like {@code <class name="..." id="..."><field .../></class>}.
+     */
+    static class Element {
+        private final String name;
+        private final Map<String, String> attributes = new LinkedHashMap<>();
+        private final List<Element> children = new ArrayList<>();
+
+        Element(String name) {
+            this.name = name;
+        }
+
+        Element attribute(String key, Object value) {
+            attributes.put(key, String.valueOf(value));
+            return this;
+        }
+
+        Element child(Element child) {
+            children.add(child);
+            return this;
+        }
+
+        private void collectStrings(Set<String> strings) {
+            strings.add(name);
+            attributes.forEach((key, value) -> {
+                strings.add(key);
+                strings.add(value);
+            });
+            children.forEach(child -> child.collectStrings(strings));
+        }
+
+        private void write(Buffer buffer, Map<String, Integer> stringIds) {
+            buffer.putVarInt(stringIds.get(name));
+            buffer.putVarInt(attributes.size());
+            attributes.forEach((key, value) -> {
+                buffer.putVarInt(stringIds.get(key));
+                buffer.putVarInt(stringIds.get(value));
+            });
+            buffer.putVarInt(children.size());
+            children.forEach(child -> child.write(buffer, stringIds));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.generator;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder
+public class SyntheticJfrConfig {
+    int threads;
+    int stackDepth;
+    int stackCardinality;
+    int methods;
+    int ecids;
+    int durationSeconds;
+    int samplingIntervalMillis;
+    int wallClockIntervalMillis;
+    double allocationProbability;
+    double lockProbability;
+    int chunkSizeMb;
+    long startEpochMillis;
+    long seed;
+
+    public static SyntheticJfrConfigBuilder defaults() {
+        return builder()
+                .threads(16)
+                .stackDepth(64)
+                .stackCardinality(10_000)
+                .methods(5_000)
+                .ecids(1_000)
+                .durationSeconds(60)
+                .samplingIntervalMillis(10)
+                .wallClockIntervalMillis(50)
+                .allocationProbability(0.2)
+                .lockProbability(0.05)
+                .chunkSizeMb(64)
+                .startEpochMillis(1_600_000_000_000L)
+                .seed(1);
+    }
+}
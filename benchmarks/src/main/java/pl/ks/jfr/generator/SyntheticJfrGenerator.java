@@ -0,0 +1,539 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.generator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import pl.ks.jfr.generator.JfrChunkWriter.Buffer;
+import pl.ks.jfr.generator.JfrChunkWriter.Element;
+
+/**
+ * Generates JFR files with the events the parser reads: {@code jdk.ExecutionSample},
+ * {@code profiler.WallClockSample}, {@code jdk.ObjectAllocationInNewTLAB}, {@code jdk.JavaMonitorEnter} and
+ * {@code jdk.CPULoad}. Events use the layout of async-profiler recordings, including the {@code contextId} (ECID)
+ * field. Output is deterministic for a given {@link SyntheticJfrConfig}.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class SyntheticJfrGenerator {
+    private static final long T_BOOLEAN = 2;
+    private static final long T_INT = 3;
+    private static final long T_LONG = 4;
+    private static final long T_FLOAT = 5;
+    private static final long T_STRING = 6;
+    private static final long T_THREAD = 10;
+    private static final long T_CLASS = 11;
+    private static final long T_PACKAGE = 12;
+    private static final long T_SYMBOL = 13;
+    private static final long T_METHOD = 14;
+    private static final long T_STACK_TRACE = 15;
+    private static final long T_STACK_FRAME = 16;
+    private static final long T_FRAME_TYPE = 17;
+    private static final long T_THREAD_STATE = 18;
+    private static final long T_LABEL = 30;
+    private static final long T_TIMESTAMP = 31;
+    private static final long T_TIMESPAN = 32;
+    private static final long T_DATA_AMOUNT = 33;
+    private static final long T_PERCENTAGE = 34;
+    private static final long T_EXECUTION_SAMPLE = 100;
+    private static final long T_WALL_CLOCK_SAMPLE = 101;
+    private static final long T_ALLOC_IN_NEW_TLAB = 102;
+    private static final long T_MONITOR_ENTER = 103;
+    private static final long T_CPU_LOAD = 104;
+
+    private static final String[] FRAME_TYPES = {"Interpreted", "JIT compiled", "Inlined", "C1 compiled"};
+    private static final int FRAME_TYPE_INTERPRETED = 1;
+    private static final int FRAME_TYPE_JIT_COMPILED = 2;
+    private static final int FRAME_TYPE_INLINED = 3;
+    private static final int FRAME_TYPE_C1_COMPILED = 4;
+    private static final String[] THREAD_STATES = {"STATE_RUNNABLE", "STATE_SLEEPING"};
+    private static final int THREAD_STATE_RUNNABLE = 1;
+    private static final int THREAD_STATE_SLEEPING = 2;
+    private static final String[] ALLOCATED_CLASSES = {"java/lang/Object", "java/lang/String", "java/util/ArrayList", "java/util/HashMap$Node", "java/lang/Long"};
+    private static final String[] MONITOR_CLASSES = {"java/lang/Object", "java/util/Hashtable", "java/lang/StringBuffer"};
+    private static final int ENTRY_FRAMES = 4;
+    private static final double ECID_CHANGE_PROBABILITY = 0.05;
+
+    private final SyntheticJfrConfig config;
+    private final Map<String, Integer> symbols = new LinkedHashMap<>();
+    private final Map<String, Integer> packages = new LinkedHashMap<>();
+    private final List<String> classNames = new ArrayList<>();
+    private final List<String> methodNames = new ArrayList<>();
+    private final List<Integer> methodClasses = new ArrayList<>();
+    private final List<Stack> stacks = new ArrayList<>();
+    private final BitSet stacksInChunk = new BitSet();
+    private int[] allocatedClasses;
+    private int[] monitorClasses;
+    private long stackPoolBytes;
+    private long executionSamples;
+    private long wallClockSamples;
+    private long allocationSamples;
+    private long lockSamples;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println("Usage: SyntheticJfrGenerator [--threads 16] [--stackDepth 64] [--stackCardinality 10000] [--methods 5000] "
+                    + "[--ecids 1000] [--durationSeconds 60] [--samplingIntervalMillis 10] [--wallClockIntervalMillis 50] "
+                    + "[--allocationProbability 0.2] [--lockProbability 0.05] [--chunkSizeMb 64] [--seed 1] output.jfr");
+            System.exit(1);
+        }
+        SyntheticJfrConfig.SyntheticJfrConfigBuilder builder = SyntheticJfrConfig.defaults();
+        for (int i = 0; i < args.length - 1; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--threads" -> builder.threads(Integer.parseInt(value));
+                case "--stackDepth" -> builder.stackDepth(Integer.parseInt(value));
+                case "--stackCardinality" -> builder.stackCardinality(Integer.parseInt(value));
+                case "--methods" -> builder.methods(Integer.parseInt(value));
+                case "--ecids" -> builder.ecids(Integer.parseInt(value));
+                case "--durationSeconds" -> builder.durationSeconds(Integer.parseInt(value));
+                case "--samplingIntervalMillis" -> builder.samplingIntervalMillis(Integer.parseInt(value));
+                case "--wallClockIntervalMillis" -> builder.wallClockIntervalMillis(Integer.parseInt(value));
+                case "--allocationProbability" -> builder.allocationProbability(Double.parseDouble(value));
+                case "--lockProbability" -> builder.lockProbability(Double.parseDouble(value));
+                case "--chunkSizeMb" -> builder.chunkSizeMb(Integer.parseInt(value));
+                case "--seed" -> builder.seed(Long.parseLong(value));
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        new SyntheticJfrGenerator(builder.build()).generate(Path.of(args[args.length - 1]));
+    }
+
+    public void generate(Path output) throws IOException {
+        long start = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(config.getSeed());
+        if (stacks.isEmpty()) {
+            createMethods();
+            createStacks(random);
+        }
+
+        Path tmpOutput = output.resolveSibling(output.getFileName() + ".tmp");
+        Element metadata = createMetadata();
+        long startNanos = TimeUnit.MILLISECONDS.toNanos(config.getStartEpochMillis());
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        long samplingInterval = TimeUnit.MILLISECONDS.toNanos(config.getSamplingIntervalMillis());
+        long wallClockInterval = TimeUnit.MILLISECONDS.toNanos(config.getWallClockIntervalMillis());
+        long cpuLoadInterval = TimeUnit.SECONDS.toNanos(1);
+        long chunkSize = (long) config.getChunkSizeMb() << 20;
+        long[] ecids = new long[config.getThreads()];
+        Buffer constantPools = new Buffer();
+        writeConstantPools(constantPools);
+        // the checkpoint with stack traces used in a chunk is often bigger than its events, so it counts toward the limit
+        long constantPoolBytes = constantPools.size();
+
+        try (JfrChunkWriter writer = new JfrChunkWriter(tmpOutput)) {
+            writer.beginChunk(startNanos);
+            for (long time = startNanos; time < endNanos; time += samplingInterval) {
+                boolean wallClockTick = (time - startNanos) % wallClockInterval < samplingInterval;
+                for (int thread = 0; thread < config.getThreads(); thread++) {
+                    if (config.getEcids() > 0 && (ecids[thread] == 0 || random.nextDouble() < ECID_CHANGE_PROBABILITY)) {
+                        ecids[thread] = 1 + random.nextInt(config.getEcids());
+                    }
+                    long eventTime = time + random.nextInt((int) samplingInterval);
+                    boolean running = random.nextInt(4) != 0;
+                    if (running) {
+                        writeExecutionSample(writer, eventTime, thread, nextStack(random), ecids[thread]);
+                    }
+                    if (wallClockTick) {
+                        writeWallClockSample(writer, eventTime, thread, nextStack(random), running, ecids[thread]);
+                    }
+                    if (random.nextDouble() < config.getAllocationProbability()) {
+                        writeAllocationSample(writer, eventTime, thread, nextStack(random), random, ecids[thread]);
+                    }
+                    if (random.nextDouble() < config.getLockProbability()) {
+                        writeLockSample(writer, eventTime, thread, nextStack(random), random, ecids[thread]);
+                    }
+                }
+                if ((time - startNanos) % cpuLoadInterval < samplingInterval) {
+                    writeCpuLoad(writer, time, random);
+                }
+                if (writer.chunkBytes() + constantPoolBytes + stackPoolBytes >= chunkSize) {
+                    endChunk(writer, time, metadata);
+                    writer.beginChunk(time);
+                }
+            }
+            endChunk(writer, endNanos, metadata);
+        }
+        Files.move(tmpOutput, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Generated {} ({} bytes) in {}ms: {} execution, {} wall-clock, {} allocation, {} lock samples",
+                output, Files.size(output), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                executionSamples, wallClockSamples, allocationSamples, lockSamples);
+    }
+
+    private void createMethods() {
+        int packageCount = Math.max(1, config.getMethods() / 500);
+        int classCount = Math.max(1, config.getMethods() / 10);
+        for (int i = 0; i < classCount; i++) {
+            classNames.add("pl/ks/synthetic/module" + (i % packageCount) + "/Class" + i);
+        }
+        for (int i = 0; i < config.getMethods(); i++) {
+            methodNames.add(i < ENTRY_FRAMES ? "entry" + i : "method" + i);
+            methodClasses.add(i % classCount);
+        }
+        allocatedClasses = addClasses(ALLOCATED_CLASSES);
+        monitorClasses = addClasses(MONITOR_CLASSES);
+    }
+
+    private int[] addClasses(String[] names) {
+        int[] ids = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = classNames.indexOf(names[i]);
+            if (ids[i] < 0) {
+                ids[i] = classNames.size();
+                classNames.add(names[i]);
+            }
+        }
+        return ids;
+    }
+
+    private void createStacks(SplittableRandom random) {
+        int maxDepth = Math.max(ENTRY_FRAMES + 1, config.getStackDepth());
+        for (int i = 0; i < config.getStackCardinality(); i++) {
+            int depth = maxDepth / 2 + random.nextInt(maxDepth - maxDepth / 2 + 1);
+            Stack stack = new Stack(depth);
+            int shared = 0;
+            if (i > 0 && random.nextInt(5) != 0) {
+                Stack parent = stacks.get(random.nextInt(i));
+                shared = Math.min(depth - 1, 1 + random.nextInt(parent.methods.length));
+                System.arraycopy(parent.methods, 0, stack.methods, 0, shared);
+                System.arraycopy(parent.lines, 0, stack.lines, 0, shared);
+                System.arraycopy(parent.types, 0, stack.types, 0, shared);
+            }
+            for (int frame = shared; frame < depth; frame++) {
+                stack.methods[frame] = frame < ENTRY_FRAMES ? frame : ENTRY_FRAMES + random.nextInt(Math.max(1, config.getMethods() - ENTRY_FRAMES));
+                stack.lines[frame] = 1 + random.nextInt(500);
+                stack.types[frame] = (byte) randomFrameType(random);
+            }
+            stack.encodedSize = encodedSize(i, stack);
+            stacks.add(stack);
+        }
+    }
+
+    private static int encodedSize(int stackId, Stack stack) {
+        int size = Buffer.varLongLength(stackId + 1) + 1 + Buffer.varLongLength(stack.methods.length);
+        for (int frame = 0; frame < stack.methods.length; frame++) {
+            size += Buffer.varLongLength(stack.methods[frame] + 1)
+                    + Buffer.varLongLength(stack.lines[frame])
+                    + Buffer.varLongLength(stack.lines[frame] * 4L)
+                    + Buffer.varLongLength(stack.types[frame]);
+        }
+        return size;
+    }
+
+    private static int randomFrameType(SplittableRandom random) {
+        int value = random.nextInt(100);
+        if (value < 70) {
+            return FRAME_TYPE_JIT_COMPILED;
+        } else if (value < 85) {
+            return FRAME_TYPE_INLINED;
+        } else if (value < 95) {
+            return FRAME_TYPE_INTERPRETED;
+        }
+        return FRAME_TYPE_C1_COMPILED;
+    }
+
+    private int nextStack(SplittableRandom random) {
+        double value = random.nextDouble();
+        int stack = (int) (stacks.size() * value * value);
+        if (!stacksInChunk.get(stack)) {
+            stacksInChunk.set(stack);
+            stackPoolBytes += stacks.get(stack).encodedSize;
+        }
+        return stack + 1;
+    }
+
+    private void writeExecutionSample(JfrChunkWriter writer, long time, int thread, int stackTrace, long ecid) throws IOException {
+        writer.beginEvent(T_EXECUTION_SAMPLE)
+                .putVarLong(time)
+                .putVarLong(thread + 1)
+                .putVarLong(stackTrace)
+                .putVarLong(THREAD_STATE_RUNNABLE)
+                .putVarLong(ecid);
+        writer.endEvent();
+        executionSamples++;
+    }
+
+    private void writeWallClockSample(JfrChunkWriter writer, long time, int thread, int stackTrace, boolean running, long ecid) throws IOException {
+        writer.beginEvent(T_WALL_CLOCK_SAMPLE)
+                .putVarLong(time)
+                .putVarLong(thread + 1)
+                .putVarLong(stackTrace)
+                .putVarLong(running ? THREAD_STATE_RUNNABLE : THREAD_STATE_SLEEPING)
+                .putVarInt(1)
+                .putVarLong(ecid);
+        writer.endEvent();
+        wallClockSamples++;
+    }
+
+    private void writeAllocationSample(JfrChunkWriter writer, long time, int thread, int stackTrace, SplittableRandom random, long ecid) throws IOException {
+        long allocationSize = 16L + 8L * random.nextInt(1024);
+        writer.beginEvent(T_ALLOC_IN_NEW_TLAB)
+                .putVarLong(time)
+                .putVarLong(thread + 1)
+                .putVarLong(stackTrace)
+                .putVarLong(allocatedClasses[random.nextInt(allocatedClasses.length)] + 1)
+                .putVarLong(allocationSize)
+                .putVarLong(Math.max(allocationSize, 512L * 1024))
+                .putVarLong(ecid);
+        writer.endEvent();
+        allocationSamples++;
+    }
+
+    private void writeLockSample(JfrChunkWriter writer, long time, int thread, int stackTrace, SplittableRandom random, long ecid) throws IOException {
+        int owner = random.nextInt(config.getThreads());
+        writer.beginEvent(T_MONITOR_ENTER)
+                .putVarLong(time)
+                .putVarLong(10_000 + random.nextInt(5_000_000))
+                .putVarLong(thread + 1)
+                .putVarLong(stackTrace)
+                .putVarLong(monitorClasses[random.nextInt(monitorClasses.length)] + 1)
+                .putVarLong(owner + 1)
+                .putVarLong(0x7f0000000000L + 64L * random.nextInt(1024))
+                .putVarLong(ecid);
+        writer.endEvent();
+        lockSamples++;
+    }
+
+    private void writeCpuLoad(JfrChunkWriter writer, long time, SplittableRandom random) throws IOException {
+        float jvmUser = (float) (0.2 + 0.5 * random.nextDouble());
+        float jvmSystem = (float) (0.05 * random.nextDouble());
+        writer.beginEvent(T_CPU_LOAD)
+                .putVarLong(time)
+                .putFloat(jvmUser)
+                .putFloat(jvmSystem)
+                .putFloat(Math.min(1f, jvmUser + jvmSystem + (float) (0.2 * random.nextDouble())));
+        writer.endEvent();
+    }
+
+    private void endChunk(JfrChunkWriter writer, long endNanos, Element metadata) throws IOException {
+        writer.endChunk(endNanos, metadata, this::writeConstantPools);
+        stacksInChunk.clear();
+        stackPoolBytes = 0;
+    }
+
+    private void writeConstantPools(Buffer buffer) {
+        symbols.clear();
+        packages.clear();
+        for (String className : classNames) {
+            int separator = className.lastIndexOf('/');
+            packages.putIfAbsent(separator < 0 ? "" : className.substring(0, separator), packages.size() + 1);
+        }
+
+        buffer.putVarInt(8);
+
+        buffer.putVarLong(T_THREAD).putVarInt(config.getThreads());
+        for (int thread = 0; thread < config.getThreads(); thread++) {
+            String name = "synthetic-worker-" + thread;
+            buffer.putVarLong(thread + 1)
+                    .putString(name)
+                    .putVarLong(10_000 + thread)
+                    .putString(name)
+                    .putVarLong(thread + 1);
+        }
+
+        buffer.putVarLong(T_THREAD_STATE).putVarInt(THREAD_STATES.length);
+        for (int i = 0; i < THREAD_STATES.length; i++) {
+            buffer.putVarLong(i + 1).putString(THREAD_STATES[i]);
+        }
+
+        buffer.putVarLong(T_FRAME_TYPE).putVarInt(FRAME_TYPES.length);
+        for (int i = 0; i < FRAME_TYPES.length; i++) {
+            buffer.putVarLong(i + 1).putString(FRAME_TYPES[i]);
+        }
+
+        buffer.putVarLong(T_STACK_TRACE).putVarInt(stacksInChunk.cardinality());
+        for (int stackId = stacksInChunk.nextSetBit(0); stackId >= 0; stackId = stacksInChunk.nextSetBit(stackId + 1)) {
+            Stack stack = stacks.get(stackId);
+            buffer.putVarLong(stackId + 1).putBoolean(false).putVarInt(stack.methods.length);
+            for (int frame = stack.methods.length - 1; frame >= 0; frame--) {
+                buffer.putVarLong(stack.methods[frame] + 1)
+                        .putVarInt(stack.lines[frame])
+                        .putVarInt(stack.lines[frame] * 4)
+                        .putVarLong(stack.types[frame]);
+            }
+        }
+
+        buffer.putVarLong(T_METHOD).putVarInt(methodNames.size());
+        for (int method = 0; method < methodNames.size(); method++) {
+            buffer.putVarLong(method + 1)
+                    .putVarLong(methodClasses.get(method) + 1)
+                    .putVarLong(symbol(methodNames.get(method)))
+                    .putVarLong(symbol("()V"))
+                    .putVarInt(1)
+                    .putBoolean(false);
+        }
+
+        buffer.putVarLong(T_CLASS).putVarInt(classNames.size());
+        for (int classId = 0; classId < classNames.size(); classId++) {
+            String className = classNames.get(classId);
+            int separator = className.lastIndexOf('/');
+            buffer.putVarLong(classId + 1)
+                    .putVarLong(symbol(className))
+                    .putVarLong(packages.get(separator < 0 ? "" : className.substring(0, separator)))
+                    .putVarInt(1);
+        }
+
+        buffer.putVarLong(T_PACKAGE).putVarInt(packages.size());
+        packages.forEach((name, id) -> buffer.putVarLong(id).putVarLong(symbol(name)));
+
+        // all symbols are known at this point, so the symbol pool goes last
+        buffer.putVarLong(T_SYMBOL).putVarInt(symbols.size());
+        symbols.forEach((symbol, id) -> buffer.putVarLong(id).putString(symbol));
+    }
+
+    private int symbol(String symbol) {
+        return symbols.computeIfAbsent(symbol, ignored -> symbols.size() + 1);
+    }
+
+    private static Element createMetadata() {
+        Element metadata = new Element("metadata")
+                .child(type(T_BOOLEAN, "boolean"))
+                .child(type(T_INT, "int"))
+                .child(type(T_LONG, "long"))
+                .child(type(T_FLOAT, "float"))
+                .child(type(T_STRING, "java.lang.String"))
+                .child(annotationType(T_LABEL, "jdk.jfr.Label", true))
+                .child(annotationType(T_TIMESTAMP, "jdk.jfr.Timestamp", true))
+                .child(annotationType(T_TIMESPAN, "jdk.jfr.Timespan", true))
+                .child(annotationType(T_DATA_AMOUNT, "jdk.jfr.DataAmount", true))
+                .child(annotationType(T_PERCENTAGE, "jdk.jfr.Percentage", false))
+                .child(type(T_THREAD, "java.lang.Thread")
+                        .child(field("osName", T_STRING))
+                        .child(field("osThreadId", T_LONG))
+                        .child(field("javaName", T_STRING))
+                        .child(field("javaThreadId", T_LONG)))
+                .child(type(T_CLASS, "java.lang.Class")
+                        .child(constantPoolField("name", T_SYMBOL))
+                        .child(constantPoolField("package", T_PACKAGE))
+                        .child(field("modifiers", T_INT)))
+                .child(type(T_PACKAGE, "jdk.types.Package")
+                        .child(constantPoolField("name", T_SYMBOL)))
+                .child(type(T_SYMBOL, "jdk.types.Symbol").attribute("simpleType", true)
+                        .child(field("string", T_STRING)))
+                .child(type(T_METHOD, "jdk.types.Method")
+                        .child(constantPoolField("type", T_CLASS))
+                        .child(constantPoolField("name", T_SYMBOL))
+                        .child(constantPoolField("descriptor", T_SYMBOL))
+                        .child(field("modifiers", T_INT))
+                        .child(field("hidden", T_BOOLEAN)))
+                .child(type(T_STACK_TRACE, "jdk.types.StackTrace")
+                        .child(field("truncated", T_BOOLEAN))
+                        .child(field("frames", T_STACK_FRAME).attribute("dimension", 1)))
+                .child(type(T_STACK_FRAME, "jdk.types.StackFrame")
+                        .child(constantPoolField("method", T_METHOD))
+                        .child(field("lineNumber", T_INT))
+                        .child(field("bytecodeIndex", T_INT))
+                        .child(constantPoolField("type", T_FRAME_TYPE)))
+                .child(type(T_FRAME_TYPE, "jdk.types.FrameType").attribute("simpleType", true)
+                        .child(field("description", T_STRING)))
+                .child(type(T_THREAD_STATE, "jdk.types.ThreadState").attribute("simpleType", true)
+                        .child(field("name", T_STRING)))
+                .child(eventType(T_EXECUTION_SAMPLE, "jdk.ExecutionSample", "Method Profiling Sample")
+                        .child(startTimeField())
+                        .child(constantPoolField("sampledThread", T_THREAD))
+                        .child(constantPoolField("stackTrace", T_STACK_TRACE))
+                        .child(constantPoolField("state", T_THREAD_STATE))
+                        .child(field("contextId", T_LONG)))
+                .child(eventType(T_WALL_CLOCK_SAMPLE, "profiler.WallClockSample", "Wall Clock Sample")
+                        .child(startTimeField())
+                        .child(constantPoolField("sampledThread", T_THREAD))
+                        .child(constantPoolField("stackTrace", T_STACK_TRACE))
+                        .child(constantPoolField("state", T_THREAD_STATE))
+                        .child(field("samples", T_INT))
+                        .child(field("contextId", T_LONG)))
+                .child(eventType(T_ALLOC_IN_NEW_TLAB, "jdk.ObjectAllocationInNewTLAB", "Allocation in new TLAB")
+                        .child(startTimeField())
+                        .child(constantPoolField("eventThread", T_THREAD))
+                        .child(constantPoolField("stackTrace", T_STACK_TRACE))
+                        .child(constantPoolField("objectClass", T_CLASS))
+                        .child(field("allocationSize", T_LONG).child(annotation(T_DATA_AMOUNT, "BYTES")))
+                        .child(field("tlabSize", T_LONG).child(annotation(T_DATA_AMOUNT, "BYTES")))
+                        .child(field("contextId", T_LONG)))
+                .child(eventType(T_MONITOR_ENTER, "jdk.JavaMonitorEnter", "Java Monitor Blocked")
+                        .child(startTimeField())
+                        .child(field("duration", T_LONG).child(annotation(T_TIMESPAN, "TICKS")))
+                        .child(constantPoolField("eventThread", T_THREAD))
+                        .child(constantPoolField("stackTrace", T_STACK_TRACE))
+                        .child(constantPoolField("monitorClass", T_CLASS))
+                        .child(constantPoolField("previousOwner", T_THREAD))
+                        .child(field("address", T_LONG))
+                        .child(field("contextId", T_LONG)))
+                .child(eventType(T_CPU_LOAD, "jdk.CPULoad", "CPU Load")
+                        .child(startTimeField())
+                        .child(field("jvmUser", T_FLOAT).child(annotation(T_PERCENTAGE, null)))
+                        .child(field("jvmSystem", T_FLOAT).child(annotation(T_PERCENTAGE, null)))
+                        .child(field("machineTotal", T_FLOAT).child(annotation(T_PERCENTAGE, null))));
+        return new Element("root")
+                .child(metadata)
+                .child(new Element("region").attribute("locale", "en_US").attribute("gmtOffset", 0));
+    }
+
+    private static Element type(long id, String name) {
+        return new Element("class").attribute("name", name).attribute("id", id);
+    }
+
+    private static Element annotationType(long id, String name, boolean withValue) {
+        Element type = type(id, name).attribute("superType", "java.lang.annotation.Annotation");
+        return withValue ? type.child(field("value", T_STRING)) : type;
+    }
+
+    private static Element eventType(long id, String name, String label) {
+        return type(id, name)
+                .attribute("superType", "jdk.jfr.Event")
+                .child(annotation(T_LABEL, label));
+    }
+
+    private static Element field(String name, long typeId) {
+        return new Element("field").attribute("name", name).attribute("class", typeId);
+    }
+
+    private static Element constantPoolField(String name, long typeId) {
+        return field(name, typeId).attribute("constantPool", true);
+    }
+
+    private static Element startTimeField() {
+        return field("startTime", T_LONG).child(annotation(T_TIMESTAMP, "TICKS"));
+    }
+
+    private static Element annotation(long typeId, String value) {
+        Element annotation = new Element("annotation").attribute("class", typeId);
+        return value == null ? annotation : annotation.attribute("value", value);
+    }
+
+    private static class Stack {
+        private final int[] methods;
+        private final int[] lines;
+        private final byte[] types;
+        private int encodedSize;
+
+        Stack(int depth) {
+            methods = new int[depth];
+            lines = new int[depth];
+            types = new byte[depth];
+        }
+    }
+}
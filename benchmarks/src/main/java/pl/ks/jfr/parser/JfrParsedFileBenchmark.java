@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.ks.collapsed.CollapsedStack;
+import pl.ks.jfr.parser.tuning.AdditionalLevel;
+
+/**
+ * Aggregation of all execution samples of a recording into collapsed stacks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JfrParsedFileBenchmark {
+    @Param({"NONE", "THREAD", "LINE_NUMBERS", "TIMESTAMP_1_S"})
+    private String additionalLevel;
+
+    private JfrParsedFile jfrParsedFile;
+    private int[] indices;
+    private Set<AdditionalLevel> additionalLevels;
+
+    @Setup
+    public void setUp() {
+        jfrParsedFile = SyntheticRecordings.parse(SyntheticRecordings.recordings(1));
+        indices = IntStream.range(0, jfrParsedFile.getExecutionSamples().size()).toArray();
+        additionalLevels = "NONE".equals(additionalLevel) ? Set.of() : EnumSet.of(AdditionalLevel.valueOf(additionalLevel));
+    }
+
+    @Benchmark
+    public CollapsedStack asCollapsed() {
+        return jfrParsedFile.asCollapsed(jfrParsedFile.getExecutionSamples(), indices, additionalLevels);
+    }
+
+    @Benchmark
+    public JfrCollapsedSamples collapse() {
+        return jfrParsedFile.collapse(jfrParsedFile.getExecutionSamples(), indices, additionalLevels);
+    }
+}
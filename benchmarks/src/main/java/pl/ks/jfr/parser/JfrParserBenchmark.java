@@ -0,0 +1,70 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of whole recordings. With many files parsed concurrently it also shows how much parsing threads
+ * contend on merging their samples into the shared {@link JfrParsedFile}. {@code streaming} compares reading with
+ * {@link jdk.jfr.consumer.RecordingFile} to loading the whole JMC model, run it with {@code -prof gc} to see the
+ * difference in allocated memory. {@code chunkParsingParallelism} shows how a single file scales when its chunks are
+ * decoded concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JfrParserBenchmark {
+    @Param({"1", "4"})
+    private int files;
+
+    @Param({"1", "4"})
+    private int fileParsingParallelism;
+
+    @Param({"1", "4"})
+    private int chunkParsingParallelism;
+
+    @Param({"true", "false"})
+    private boolean streaming;
+
+    private List<Path> recordings;
+
+    @Setup
+    public void setUp() {
+        recordings = SyntheticRecordings.recordings(files);
+    }
+
+    @Benchmark
+    public JfrParsedFile parse() {
+        return new JfrParserImpl(fileParsingParallelism, chunkParsingParallelism, streaming).parse(recordings, false, false, false, true);
+    }
+}
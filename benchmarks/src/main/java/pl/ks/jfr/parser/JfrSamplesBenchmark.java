@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selection of execution samples from a time window in the middle of a recording, by the time index and by a scan of
+ * all samples.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JfrSamplesBenchmark {
+    @Param({"1", "10", "30", "60"})
+    private int windowSeconds;
+
+    private JfrExecutionSamples samples;
+    private long fromMillis;
+    private long toMillis;
+
+    @Setup
+    public void setUp() {
+        JfrParsedFile jfrParsedFile = SyntheticRecordings.parse(SyntheticRecordings.recordings(1));
+        samples = jfrParsedFile.getExecutionSamples();
+        long middle = (jfrParsedFile.getMinEventDate().toEpochMilli() + jfrParsedFile.getMaxEventDate().toEpochMilli()) / 2;
+        fromMillis = middle - windowSeconds * 500L;
+        toMillis = fromMillis + windowSeconds * 1000L - 1;
+        samples.findSamplesBetween(fromMillis, toMillis);
+    }
+
+    @Benchmark
+    public int[] findSamplesBetween() {
+        return samples.findSamplesBetween(fromMillis, toMillis);
+    }
+
+    @Benchmark
+    public int[] scanAllSamples() {
+        return IntStream.range(0, samples.size())
+                .filter(index -> samples.getEventTimeMillis(index) >= fromMillis && samples.getEventTimeMillis(index) <= toMillis)
+                .toArray();
+    }
+}
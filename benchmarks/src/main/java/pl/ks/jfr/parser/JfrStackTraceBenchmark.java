@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmc.common.IMCFrame;
+import org.openjdk.jmc.common.IMCStackTrace;
+import org.openjdk.jmc.common.item.IItem;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.flightrecorder.JfrAttributes;
+import org.openjdk.jmc.flightrecorder.internal.EventArray;
+import org.openjdk.jmc.flightrecorder.internal.EventArrays;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Conversion of JMC stack traces and frames, measured over all distinct stack traces of a recording.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JfrStackTraceBenchmark {
+    private List<IMCStackTrace> stackTraces;
+    private List<IMCFrame> frames;
+
+    @Setup
+    public void setUp() throws Exception {
+        EventArrays flightRecording = ParserUtil.getFlightRecording(SyntheticRecordings.recording());
+        Map<IMCStackTrace, Boolean> distinctStackTraces = new IdentityHashMap<>();
+        for (EventArray eventArray : flightRecording.getArrays()) {
+            if (!JfrParserHelper.isExecutionSampleEvent(eventArray)) {
+                continue;
+            }
+            IMemberAccessor<IMCStackTrace, IItem> accessor = JfrAttributes.EVENT_STACKTRACE.getAccessor(eventArray.getType());
+            for (IItem event : eventArray.getEvents()) {
+                distinctStackTraces.put(accessor.getMember(event), true);
+            }
+        }
+        stackTraces = new ArrayList<>(distinctStackTraces.keySet());
+        frames = stackTraces.stream()
+                .flatMap(stackTrace -> stackTrace.getFrames().stream())
+                .map(IMCFrame.class::cast)
+                .toList();
+    }
+
+    @Benchmark
+    public void getStackTrace(Blackhole blackhole) {
+        JfrParsedFile jfrParsedFile = new JfrParsedFile(false, false, false, true);
+        JfrFrameCache frameCache = new JfrFrameCache(jfrParsedFile);
+        for (IMCStackTrace stackTrace : stackTraces) {
+            blackhole.consume(JfrParserImpl.getStackTrace(jfrParsedFile, frameCache, stackTrace.getFrames()));
+        }
+    }
+
+    @Benchmark
+    public void getType(Blackhole blackhole) {
+        for (IMCFrame frame : frames) {
+            blackhole.consume(JfrParserImpl.getType(frame));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import pl.ks.jfr.generator.SyntheticJfrConfig;
+import pl.ks.jfr.generator.SyntheticJfrGenerator;
+
+/**
+ * Synthetic JFR recordings used as benchmark input, written by {@link SyntheticJfrGenerator}. Generated files are
+ * kept in {@code java.io.tmpdir} and reused by the following forks and runs.
+ */
+@Slf4j
+@UtilityClass
+public class SyntheticRecordings {
+    private static final Path DIRECTORY = Path.of(System.getProperty("java.io.tmpdir"), "jvm-profiling-toolkit-benchmarks");
+    private static final SyntheticJfrConfig CONFIG = SyntheticJfrConfig.defaults()
+            .threads(Integer.getInteger("benchmarks.threads", 8))
+            .stackDepth(Integer.getInteger("benchmarks.stackDepth", 48))
+            .stackCardinality(Integer.getInteger("benchmarks.stackCardinality", 4096))
+            .ecids(Integer.getInteger("benchmarks.ecids", 1000))
+            .durationSeconds(Integer.getInteger("benchmarks.durationSeconds", 60))
+            .chunkSizeMb(Integer.getInteger("benchmarks.chunkSizeMb", 1))
+            .build();
+
+    public static Path recording() {
+        return recording(CONFIG);
+    }
+
+    public static List<Path> recordings(int count) {
+        Path recording = recording();
+        List<Path> recordings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Path copy = recording.resolveSibling(recording.getFileName().toString().replace(".jfr", "-" + i + ".jfr"));
+            try {
+                if (!Files.exists(copy)) {
+                    Files.copy(recording, copy, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                log.error("Cannot copy {} to {}", recording, copy, e);
+                throw new RuntimeException(e);
+            }
+            recordings.add(copy);
+        }
+        return recordings;
+    }
+
+    public static JfrParsedFile parse(List<Path> recordings) {
+        return new JfrParserImpl(1, Runtime.getRuntime().availableProcessors(), true).parse(recordings, false, false, false, true);
+    }
+
+    public static synchronized Path recording(SyntheticJfrConfig config) {
+        Path recording = DIRECTORY.resolve("synthetic-" + Integer.toHexString(config.hashCode()) + ".jfr");
+        if (Files.exists(recording)) {
+            return recording;
+        }
+        try {
+            Files.createDirectories(DIRECTORY);
+            log.info("Generating {} for {}", recording, config);
+            new SyntheticJfrGenerator(config).generate(recording);
+            return recording;
+        } catch (IOException e) {
+            log.error("Cannot generate {}", recording, e);
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.viewer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pl.ks.jfr.parser.JfrParsedFile;
+import pl.ks.jfr.parser.SyntheticRecordings;
+import pl.ks.viewer.flamegraph.FlameGraphExecutor;
+
+/**
+ * Self and total time tables of all execution samples of a recording, and filtered collapsed samples behind a flame
+ * graph, without the result cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatefulJfrViewerServiceBenchmark {
+    private StatefulJfrViewerService service;
+    private JfrParsedFile jfrParsedFile;
+    private int[] indices;
+    private UUID uuid;
+    private JfrViewerFilterAndLevelConfig config;
+
+    @Setup
+    public void setUp() {
+        service = new StatefulJfrViewerService(null, new FlameGraphExecutor(1), false, null, Duration.ZERO, new StatefulJfrResultCache(0));
+        jfrParsedFile = SyntheticRecordings.parse(SyntheticRecordings.recordings(1));
+        indices = IntStream.range(0, jfrParsedFile.getExecutionSamples().size()).toArray();
+        uuid = UUID.randomUUID();
+        service.addNewFile(uuid, jfrParsedFile);
+        config = JfrViewerFilterAndLevelConfig.builder()
+                .additionalLevels(Set.of())
+                .consumeCpuOn(true)
+                .stackTraceNotContainsFilterOn(true)
+                .stackTraceNotContainsFilters(List.of("Class42."))
+                .build();
+    }
+
+    @Benchmark
+    public SelfAndTotalTimeStats generateTimeStats() {
+        return service.generateTimeStats(jfrParsedFile.getExecutionSamples(), Arrays.stream(indices));
+    }
+
+    @Benchmark
+    public StreamingResponseBody filteredExecutionSamplesFlameGraph() {
+        return service.getExecutionSamplesFlameGraph(uuid, config);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.viewer.flamegraph;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.ks.collapsed.CollapsedStack;
+import pl.ks.jfr.parser.JfrParsedFile;
+import pl.ks.jfr.parser.SyntheticRecordings;
+import pl.ks.jfr.parser.tuning.AdditionalLevel;
+
+/**
+ * Building the frame tree from collapsed stacks and rendering it as HTML. Run {@code parseCollapsed} with
+ * {@code -prof gc} to see the memory a frame tree takes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FlameGraphBenchmark {
+    private String collapsed;
+
+    @Setup
+    public void setUp() {
+        JfrParsedFile jfrParsedFile = SyntheticRecordings.parse(SyntheticRecordings.recordings(1));
+        int[] indices = IntStream.range(0, jfrParsedFile.getExecutionSamples().size()).toArray();
+        CollapsedStack collapsedStack = jfrParsedFile.asCollapsed(jfrParsedFile.getExecutionSamples(), indices, Set.of(AdditionalLevel.THREAD));
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, AtomicLong> entry : collapsedStack.stacks().entrySet()) {
+            builder.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        collapsed = builder.toString();
+    }
+
+    @State(Scope.Thread)
+    public static class ParsedFlameGraph {
+        @Param({"0", "0.1"})
+        private double minWidth;
+
+        private FlameGraph flameGraph;
+
+        @Setup(Level.Invocation)
+        public void setUp(FlameGraphBenchmark benchmark) throws IOException {
+            flameGraph = benchmark.parse(new Arguments("--title", "Benchmark", "--minwidth", Double.toString(minWidth)));
+        }
+    }
+
+    @Benchmark
+    public FlameGraph parseCollapsed() throws IOException {
+        return parse(new Arguments("--title", "Benchmark"));
+    }
+
+    @Benchmark
+    public void dump(ParsedFlameGraph parsedFlameGraph) {
+        parsedFlameGraph.flameGraph.dump(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    private FlameGraph parse(Arguments arguments) throws IOException {
+        FlameGraph parsed = new FlameGraph(arguments);
+        parsed.parseCollapsed(new BufferedReader(new StringReader(collapsed)));
+        return parsed;
+    }
+}
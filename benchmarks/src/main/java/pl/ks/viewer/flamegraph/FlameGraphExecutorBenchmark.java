@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.viewer.flamegraph;
+
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.ks.jfr.parser.JfrCollapsedSamples;
+import pl.ks.jfr.parser.JfrParsedFile;
+import pl.ks.jfr.parser.SyntheticRecordings;
+import pl.ks.jfr.parser.tuning.AdditionalLevel;
+
+/**
+ * Flame graphs of the stateful viewer, rendered straight from aggregated samples.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FlameGraphExecutorBenchmark {
+    @Param({"1", "4"})
+    private int parallelism;
+
+    private FlameGraphExecutor flameGraphExecutor;
+    private JfrCollapsedSamples collapsedSamples;
+
+    @Setup
+    public void setUp() {
+        flameGraphExecutor = new FlameGraphExecutor(parallelism);
+        JfrParsedFile jfrParsedFile = SyntheticRecordings.parse(SyntheticRecordings.recordings(1));
+        int[] indices = IntStream.range(0, jfrParsedFile.getExecutionSamples().size()).toArray();
+        collapsedSamples = jfrParsedFile.collapse(jfrParsedFile.getExecutionSamples(), indices, Set.of(AdditionalLevel.THREAD, AdditionalLevel.TIMESTAMP_1_S));
+    }
+
+    @Benchmark
+    public void generateFlameGraphHtml5() {
+        flameGraphExecutor.generateFlameGraphHtml5(collapsedSamples, "Benchmark", false, 0, OutputStream.nullOutputStream());
+    }
+}
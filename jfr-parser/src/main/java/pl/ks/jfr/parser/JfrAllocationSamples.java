@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.BitSet;
+import java.util.List;
+
+public class JfrAllocationSamples extends JfrSamples<JfrAllocationSamples> {
+    private final JfrBitColumn outsideTLAB = new JfrBitColumn(INITIAL_CAPACITY);
+    private final JfrIntColumn objectClassIds = new JfrIntColumn(INITIAL_CAPACITY);
+    private final JfrLongColumn sizes = new JfrLongColumn(INITIAL_CAPACITY);
+
+    JfrAllocationSamples(JfrParsedFile jfrParsedFile) {
+        super(jfrParsedFile);
+    }
+
+    public int getObjectClassId(int index) {
+        return objectClassIds.get(index);
+    }
+
+    public String getObjectClass(int index) {
+        return jfrParsedFile.getClassNames().get(objectClassIds.get(index));
+    }
+
+    public long getSize(int index) {
+        return sizes.get(index);
+    }
+
+    public boolean isOutsideTLAB(int index) {
+        return outsideTLAB.get(index);
+    }
+
+    @Override
+    public String getLeafFrame(int index) {
+        return getObjectClass(index) + (isOutsideTLAB(index) ? "_[i]" : "_[k]");
+    }
+
+    void add(long eventTime, int threadId, int filenameId, long correlationId, int stackTraceId, int objectClassId, long size, boolean outsideTLAB) {
+        int index = addCommon(eventTime, threadId, filenameId, correlationId, stackTraceId);
+        this.objectClassIds.set(index, objectClassId);
+        this.sizes.set(index, size);
+        this.outsideTLAB.set(index, outsideTLAB);
+    }
+
+    @Override
+    JfrAllocationSamples newSamples(JfrParsedFile jfrParsedFile) {
+        return new JfrAllocationSamples(jfrParsedFile);
+    }
+
+    @Override
+    void add(JfrAllocationSamples source, int sourceIndex, int stackTraceId) {
+        int index = addCommon(source, sourceIndex, stackTraceId);
+        objectClassIds.set(index, source.objectClassIds.get(sourceIndex));
+        sizes.set(index, source.sizes.get(sourceIndex));
+        outsideTLAB.set(index, source.outsideTLAB.get(sourceIndex));
+    }
+
+    @Override
+    void addAll(JfrAllocationSamples source) {
+        int offset = addAllCommon(source);
+        objectClassIds.copyFrom(source.objectClassIds, 0, offset, source.size);
+        sizes.copyFrom(source.sizes, 0, offset, source.size);
+        outsideTLAB.copyFrom(source.outsideTLAB, 0, offset, source.size);
+    }
+
+    @Override
+    void addUsedIds(BitSet stackTraceIds, BitSet threadIds, BitSet classIds) {
+        super.addUsedIds(stackTraceIds, threadIds, classIds);
+        for (int i = 0; i < size; i++) {
+            classIds.set(objectClassIds.get(i));
+        }
+    }
+
+    @Override
+    void remapIds(int[] stackTraceIds, int[] threadIds, int[] classIds) {
+        super.remapIds(stackTraceIds, threadIds, classIds);
+        for (int i = 0; i < size; i++) {
+            objectClassIds.set(i, classIds[objectClassIds.get(i)]);
+        }
+    }
+
+    @Override
+    List<JfrColumn> getTypeColumns() {
+        return List.of(outsideTLAB, objectClassIds, sizes);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+final class JfrBitColumn implements JfrColumn {
+    private final JfrLongColumn words;
+
+    JfrBitColumn(int capacity) {
+        words = new JfrLongColumn(wordCount(capacity));
+    }
+
+    boolean get(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    void set(int index, boolean value) {
+        long word = words.get(index >>> 6);
+        words.set(index >>> 6, value ? word | (1L << index) : word & ~(1L << index));
+    }
+
+    void copyFrom(JfrBitColumn source, int sourceIndex, int index, int length) {
+        for (int i = 0; i < length; i++) {
+            set(index + i, source.get(sourceIndex + i));
+        }
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        words.ensureCapacity(wordCount(capacity));
+    }
+
+    @Override
+    public long map(FileChannel channel, long position, int size) throws IOException {
+        return words.map(channel, position, wordCount(size));
+    }
+
+    @Override
+    public long mappedBytes(int size) {
+        return words.mappedBytes(wordCount(size));
+    }
+
+    @Override
+    public void write(DataOutput output, int size) throws IOException {
+        words.write(output, wordCount(size));
+    }
+
+    @Override
+    public void read(DataInput input, int size) throws IOException {
+        words.read(input, wordCount(size));
+    }
+
+    private static int wordCount(int bits) {
+        return (bits + 63) >>> 6;
+    }
+}
@@ -36,11 +36,19 @@ import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import jdk.jfr.Timestamp;
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedStackTrace;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.openjdk.jmc.common.item.IAccessorKey;
 import org.openjdk.jmc.common.item.IItem;
@@ -55,17 +63,21 @@ import pl.ks.jfr.parser.tuning.AdditionalLevel;
 import pl.ks.jfr.parser.tuning.PreStackFilter;
 
 @Slf4j
+@RequiredArgsConstructor
 class JfrCollapsedParserImpl implements JfrCollapsedParser {
     public static final ThreadLocal<SimpleDateFormat> OUTPUT_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US));
     public static final ThreadLocal<DecimalFormat> TIME_STAMP_FORMAT = ThreadLocal.withInitial(() -> new DecimalFormat("0000000000000"));
     private static final BigDecimal PERCENT_MULTIPLIER = new BigDecimal(100);
 
+    private final int chunkParsingParallelism;
+    private final boolean streaming;
+
     @Override
     public JfrCollapsedParsedFile parseCollapsed(List<Path> jfrFiles, List<PreStackFilter> filters, Set<AdditionalLevel> additionalLevels) {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
         JfrCollapsedParsedFile jfrCollapsedParsedFile = new JfrCollapsedParsedFile();
-        jfrFiles.forEach(path -> parseFile(
+        jfrFiles.forEach(path -> parseFile(streaming, chunkParsingParallelism,
                 JfrCollapsedParserContext.builder()
                         .preStackFilters(filters)
                         .additionalLevels(additionalLevels)
@@ -87,6 +99,14 @@ class JfrCollapsedParserImpl implements JfrCollapsedParser {
 
         try {
             for (Path path : paths.toList()) {
+                if (streaming) {
+                    ParserUtil.readRecordingChunks(path, chunkParsingParallelism, () -> event -> {
+                        if (isStackTraceEvent(event.getEventType().getName())) {
+                            startEndDateCalculator.newDate(Instant.ofEpochMilli(JfrRecordedEvents.getStartTime(event) / 1000000));
+                        }
+                    });
+                    continue;
+                }
                 EventArrays flightRecording = getFlightRecording(path);
                 for (EventArray eventArray : flightRecording.getArrays()) {
                     if (!isExecutionSampleEvent(eventArray) && !isLockEvent(eventArray) && !isAsyncAllocNewTLABEvent(eventArray) && !isAsyncAllocOutsideTLABEvent(eventArray)) {
@@ -117,10 +137,15 @@ class JfrCollapsedParserImpl implements JfrCollapsedParser {
     }
 
 
-    private static void parseFile(JfrCollapsedParserContext context) {
+    private static void parseFile(boolean streaming, int chunkParsingParallelism, JfrCollapsedParserContext context) {
         log.info("Input file: " + context.getFile().getFileName());
         log.info("Converting JFR to collapsed stack ...");
 
+        if (streaming) {
+            parseFileStreaming(context, chunkParsingParallelism);
+            return;
+        }
+
         JfrCollapsedParsedFile jfrCollapsedParsedFile = context.getJfrCollapsedParsedFile();
 
         try {
@@ -153,6 +178,129 @@ class JfrCollapsedParserImpl implements JfrCollapsedParser {
         }
     }
 
+    private static void parseFileStreaming(JfrCollapsedParserContext context, int chunkParsingParallelism) {
+        JfrCollapsedParsedFile jfrCollapsedParsedFile = context.getJfrCollapsedParsedFile();
+
+        try {
+            // stacks are counted straight into the concurrent collapsed stacks, information events are applied in
+            // the order of their chunks, so the last chunk wins like in a sequential read
+            List<StreamedChunk> chunks = ParserUtil.readRecordingChunks(context.getFile(), chunkParsingParallelism, () -> new StreamedChunk(context));
+            for (StreamedChunk chunk : chunks) {
+                jfrCollapsedParsedFile.getOsInfo().putAll(chunk.osInfo);
+                jfrCollapsedParsedFile.getCpuInfo().putAll(chunk.cpuInfo);
+                jfrCollapsedParsedFile.getJvmInfo().putAll(chunk.jvmInfo);
+                jfrCollapsedParsedFile.getInitialSystemProperties().putAll(chunk.initialSystemProperties);
+            }
+        } catch (Exception e) {
+            log.error("Fatal error", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class StreamedChunk implements Consumer<RecordedEvent> {
+        private final JfrCollapsedParserContext context;
+        private final Map<RecordedStackTrace, String> flatFrames = new WeakHashMap<>();
+        private final Map<String, String> osInfo = new HashMap<>();
+        private final Map<String, String> cpuInfo = new HashMap<>();
+        private final Map<String, String> jvmInfo = new HashMap<>();
+        private final Map<String, String> initialSystemProperties = new HashMap<>();
+
+        @Override
+        public void accept(RecordedEvent event) {
+            switch (event.getEventType().getName()) {
+                case JfrRecordedEvents.EXECUTION_SAMPLE -> processWallEvent(context, event, flatFrames);
+                case JfrRecordedEvents.MONITOR_ENTER -> processLockEvent(context, event, flatFrames);
+                case JfrRecordedEvents.ALLOCATION_IN_NEW_TLAB -> processAllocEvent(context, event, flatFrames, false);
+                case JfrRecordedEvents.ALLOCATION_OUTSIDE_TLAB -> processAllocEvent(context, event, flatFrames, true);
+                case JfrRecordedEvents.CPU_LOAD -> processCpuEvent(context, event);
+                case JfrRecordedEvents.OS_INFORMATION -> processEventValueToMap(osInfo, event);
+                case JfrRecordedEvents.CPU_INFORMATION -> processEventValueToMap(cpuInfo, event);
+                case JfrRecordedEvents.JVM_INFORMATION -> processEventValueToMap(jvmInfo, event);
+                case JfrRecordedEvents.INITIAL_SYSTEM_PROPERTY -> initialSystemProperties.put(event.getString("key"), event.getString("value"));
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static boolean isStackTraceEvent(String eventType) {
+        return switch (eventType) {
+            case JfrRecordedEvents.EXECUTION_SAMPLE, JfrRecordedEvents.MONITOR_ENTER,
+                    JfrRecordedEvents.ALLOCATION_IN_NEW_TLAB, JfrRecordedEvents.ALLOCATION_OUTSIDE_TLAB -> true;
+            default -> false;
+        };
+    }
+
+    private static void processEventValueToMap(Map<String, String> map, RecordedEvent event) {
+        for (ValueDescriptor field : event.getFields()) {
+            String key = field.getName();
+            Object objValue = event.getValue(key);
+            if (objValue instanceof String) {
+                map.put(key, objValue.toString());
+            } else if (objValue instanceof Number) {
+                if (Timestamp.class.getName().equals(field.getContentType())) {
+                    map.put(key, OUTPUT_FORMAT.get().format(Date.from(event.getInstant(key))));
+                } else {
+                    map.put(key, objValue.toString());
+                }
+            }
+        }
+    }
+
+    private static void processCpuEvent(JfrCollapsedParserContext context, RecordedEvent event) {
+        if (shouldSkipByFilter(context.getPreStackFilters(), event)) {
+            return;
+        }
+        addCpuLoad(context, event.getDouble("jvmUser"), event.getDouble("jvmSystem"), event.getDouble("machineTotal"));
+    }
+
+    private static void processAllocEvent(JfrCollapsedParserContext context, RecordedEvent event, Map<RecordedStackTrace, String> flatFrames, boolean outsideTlab) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || shouldSkipByFilter(context.getPreStackFilters(), event)) {
+            return;
+        }
+
+        JfrCollapsedParsedFile jfrCollapsedParsedFile = context.getJfrCollapsedParsedFile();
+        String objectClass = JfrStreamingParser.getClassName(event.getClass("objectClass"));
+        String stacktrace = fetchFlatStackTrace(event, stackTrace, context, flatFrames) + ";" + objectClass + (outsideTlab ? "_[i]" : "_[k]");
+        jfrCollapsedParsedFile.getAllocCount().addSingleStack(stacktrace);
+        jfrCollapsedParsedFile.getAllocSize().add(stacktrace, event.getLong("allocationSize"));
+    }
+
+    private static void processLockEvent(JfrCollapsedParserContext context, RecordedEvent event, Map<RecordedStackTrace, String> flatFrames) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || shouldSkipByFilter(context.getPreStackFilters(), event)) {
+            return;
+        }
+
+        String monitorClass = JfrStreamingParser.getClassName(event.getClass("monitorClass"));
+        String stacktrace = fetchFlatStackTrace(event, stackTrace, context, flatFrames) + ";" + monitorClass + "_[i]";
+        context.getJfrCollapsedParsedFile().getLock().addSingleStack(stacktrace);
+    }
+
+    private static void processWallEvent(JfrCollapsedParserContext context, RecordedEvent event, Map<RecordedStackTrace, String> flatFrames) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null || shouldSkipByFilter(context.getPreStackFilters(), event)) {
+            return;
+        }
+
+        JfrCollapsedParsedFile jfrCollapsedParsedFile = context.getJfrCollapsedParsedFile();
+        boolean consumesCpu = JfrParserHelper.isConsumingCpu(JfrRecordedEvents.getString(event, "state"));
+
+        long ecid = JfrRecordedEvents.getEcid(event);
+        if (ecid != 0) {
+            Instant eventDate = Instant.ofEpochMilli(JfrRecordedEvents.getStartTime(event) / 1000000);
+            jfrCollapsedParsedFile.getEcidInfo().computeIfAbsent(ecid, JfrEcidInfo::new).newExecutionSample(eventDate, consumesCpu);
+        }
+
+        String stacktrace = fetchFlatStackTrace(event, stackTrace, context, flatFrames);
+        jfrCollapsedParsedFile.getWall().addSingleStack(stacktrace);
+        if (consumesCpu) {
+            jfrCollapsedParsedFile.getCpu().addSingleStack(stacktrace);
+        }
+    }
+
     private static void processKVEventValueToMap(Map<String, String> map, EventArray eventArray) {
         IMemberAccessor<String, IItem> keyAccessor = JfrParserHelper.findKeyAccessor(eventArray);
         IMemberAccessor<String, IItem> valueAccessor = JfrParserHelper.findValueAccessor(eventArray);
@@ -187,7 +335,6 @@ class JfrCollapsedParserImpl implements JfrCollapsedParser {
     }
 
     private static void processCpuEvent(JfrCollapsedParserContext context, EventArray eventArray) {
-        JfrCollapsedParsedFile jfrCollapsedParsedFile = context.getJfrCollapsedParsedFile();
         List<PreStackFilter> preStackFilters = context.getPreStackFilters();
 
         JfrAccessors accessors = JfrAccessors.builder()
@@ -204,18 +351,23 @@ class JfrCollapsedParserImpl implements JfrCollapsedParser {
             ITypedQuantity jvmUser = accessors.getJvmUserAccessor().getMember(event);
             ITypedQuantity jvmSystem = accessors.getJvmSystemAccessor().getMember(event);
             ITypedQuantity machineTotal = accessors.getMachineTotalAccessor().getMember(event);
+            addCpuLoad(context, jvmUser.doubleValue(), jvmSystem.doubleValue(), machineTotal.doubleValue());
+        });
+    }
+
+    private static void addCpuLoad(JfrCollapsedParserContext context, double jvmUser, double jvmSystem, double machineTotal) {
+        JfrCollapsedParsedFile jfrCollapsedParsedFile = context.getJfrCollapsedParsedFile();
 
-            int scaledJvmUser = BigDecimal.valueOf(jvmUser.doubleValue()).multiply(PERCENT_MULTIPLIER).setScale(0, RoundingMode.HALF_EVEN).intValue();
-            int scaledJvmSystem = BigDecimal.valueOf(jvmSystem.doubleValue()).multiply(PERCENT_MULTIPLIER).setScale(0, RoundingMode.HALF_EVEN).intValue();
-            int scaledJvmTotal = scaledJvmSystem + scaledJvmUser;
-            int scaledMachineTotal = BigDecimal.valueOf(machineTotal.doubleValue()).multiply(PERCENT_MULTIPLIER).setScale(0, RoundingMode.HALF_EVEN).intValue();
+        int scaledJvmUser = BigDecimal.valueOf(jvmUser).multiply(PERCENT_MULTIPLIER).setScale(0, RoundingMode.HALF_EVEN).intValue();
+        int scaledJvmSystem = BigDecimal.valueOf(jvmSystem).multiply(PERCENT_MULTIPLIER).setScale(0, RoundingMode.HALF_EVEN).intValue();
+        int scaledJvmTotal = scaledJvmSystem + scaledJvmUser;
+        int scaledMachineTotal = BigDecimal.valueOf(machineTotal).multiply(PERCENT_MULTIPLIER).setScale(0, RoundingMode.HALF_EVEN).intValue();
 
-            jfrCollapsedParsedFile.getCpuLoadJvmUser().addSingleStack(createCpuLoadStack(context, "JVM user", scaledJvmUser));
-            jfrCollapsedParsedFile.getCpuLoadJvmSystem().addSingleStack(createCpuLoadStack(context, "JVM system", scaledJvmSystem));
-            jfrCollapsedParsedFile.getCpuLoadJvmTotal().addSingleStack(createCpuLoadStack(context, "JVM total", scaledJvmTotal));
-            jfrCollapsedParsedFile.getCpuLoadMachineTotal().addSingleStack(createCpuLoadStack(context, "Machine total", scaledMachineTotal));
-            jfrCollapsedParsedFile.getCpuLoadMachineTotalMinusJvmTotal().addSingleStack(createCpuLoadStack(context, "Machine total - JVM total", scaledMachineTotal - scaledJvmTotal));
-        });
+        jfrCollapsedParsedFile.getCpuLoadJvmUser().addSingleStack(createCpuLoadStack(context, "JVM user", scaledJvmUser));
+        jfrCollapsedParsedFile.getCpuLoadJvmSystem().addSingleStack(createCpuLoadStack(context, "JVM system", scaledJvmSystem));
+        jfrCollapsedParsedFile.getCpuLoadJvmTotal().addSingleStack(createCpuLoadStack(context, "JVM total", scaledJvmTotal));
+        jfrCollapsedParsedFile.getCpuLoadMachineTotal().addSingleStack(createCpuLoadStack(context, "Machine total", scaledMachineTotal));
+        jfrCollapsedParsedFile.getCpuLoadMachineTotalMinusJvmTotal().addSingleStack(createCpuLoadStack(context, "Machine total - JVM total", scaledMachineTotal - scaledJvmTotal));
     }
 
     private static String createCpuLoadStack(JfrCollapsedParserContext context, String prefix, int counter) {
@@ -337,4 +489,13 @@ class JfrCollapsedParserImpl implements JfrCollapsedParser {
         }
         return false;
     }
+
+    private static boolean shouldSkipByFilter(List<PreStackFilter> preStackFilters, RecordedEvent event) {
+        for (PreStackFilter preStackFilter : preStackFilters) {
+            if (!preStackFilter.shouldInclude(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
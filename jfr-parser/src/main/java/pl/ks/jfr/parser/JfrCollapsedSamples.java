@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import pl.ks.collapsed.CollapsedStack;
+
+/**
+ * Samples aggregated by their collapsed form without building the collapsed strings: a row is a prefix made of
+ * additional levels, a stack trace and an optional leaf frame.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class JfrCollapsedSamples {
+    private final Map<Row, LongAdder> rows = new ConcurrentHashMap<>();
+    private final JfrStackTraceTable stackTraceTable;
+    @Getter
+    private final boolean withLineNumbers;
+    private volatile List<Map.Entry<Row, LongAdder>> rowList;
+
+    void add(String prefix, int stackTraceId, String leafFrame, long count) {
+        rows.computeIfAbsent(new Row(prefix, stackTraceId, leafFrame), ignored -> new LongAdder()).add(count);
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public void forEach(RowConsumer consumer) {
+        rows.forEach((row, count) -> consumer.accept(row.prefix(), stackTraceTable.get(row.stackTraceId()), row.leafFrame(), count.sum()));
+    }
+
+    /**
+     * Visits only the given part of rows, parts of the same collapsed samples are disjoint and cover all rows.
+     */
+    public void forEach(int part, int parts, RowConsumer consumer) {
+        List<Map.Entry<Row, LongAdder>> rowList = getRowList();
+        int from = (int) ((long) rowList.size() * part / parts);
+        int to = (int) ((long) rowList.size() * (part + 1) / parts);
+        for (Map.Entry<Row, LongAdder> entry : rowList.subList(from, to)) {
+            Row row = entry.getKey();
+            consumer.accept(row.prefix(), stackTraceTable.get(row.stackTraceId()), row.leafFrame(), entry.getValue().sum());
+        }
+    }
+
+    private List<Map.Entry<Row, LongAdder>> getRowList() {
+        List<Map.Entry<Row, LongAdder>> current = rowList;
+        if (current != null) {
+            return current;
+        }
+        // parts are visited concurrently, all of them have to split the very same list
+        synchronized (this) {
+            if (rowList == null) {
+                rowList = new ArrayList<>(rows.entrySet());
+            }
+            return rowList;
+        }
+    }
+
+    public CollapsedStack toCollapsedStack() {
+        CollapsedStack collapsedStack = new CollapsedStack();
+        Map<Integer, String> collapsedStackTraces = new HashMap<>();
+        forEach((prefix, stackTrace, leafFrame, count) -> {
+            String collapsedStackTrace = collapsedStackTraces.computeIfAbsent(stackTrace.getId(), ignored -> stackTrace.asCollapsed(withLineNumbers));
+            if (prefix == null && leafFrame == null) {
+                collapsedStack.add(collapsedStackTrace, count);
+                return;
+            }
+            StringBuilder builder = new StringBuilder();
+            if (prefix != null) {
+                builder.append(prefix);
+            }
+            builder.append(collapsedStackTrace);
+            if (leafFrame != null) {
+                builder.append(';').append(leafFrame);
+            }
+            collapsedStack.add(builder.toString(), count);
+        });
+        return collapsedStack;
+    }
+
+    @FunctionalInterface
+    public interface RowConsumer {
+        /**
+         * @param prefix additional levels, each followed by ';', or null when there are none
+         * @param leafFrame frame added after the stack trace, or null
+         */
+        void accept(String prefix, JfrStackTrace stackTrace, String leafFrame, long count);
+    }
+
+    private record Row(String prefix, int stackTraceId, String leafFrame) {
+    }
+}
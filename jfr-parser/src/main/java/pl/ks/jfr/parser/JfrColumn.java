@@ -0,0 +1,41 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+interface JfrColumn {
+    void ensureCapacity(int capacity);
+
+    /**
+     * Moves the first {@code size} values to the channel starting at {@code position} and serves them from the mapped
+     * region afterwards. Returns the position after the written values.
+     */
+    long map(FileChannel channel, long position, int size) throws IOException;
+
+    /**
+     * Number of bytes the first {@code size} values take when mapped, a single mapping is limited to
+     * {@link Integer#MAX_VALUE} bytes.
+     */
+    long mappedBytes(int size);
+
+    void write(DataOutput output, int size) throws IOException;
+
+    void read(DataInput input, int size) throws IOException;
+}
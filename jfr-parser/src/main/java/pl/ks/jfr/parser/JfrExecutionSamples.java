@@ -0,0 +1,65 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.List;
+
+public class JfrExecutionSamples extends JfrSamples<JfrExecutionSamples> {
+    private final JfrBitColumn consumesCpu = new JfrBitColumn(INITIAL_CAPACITY);
+    private final JfrLongColumn samples = new JfrLongColumn(INITIAL_CAPACITY);
+
+    JfrExecutionSamples(JfrParsedFile jfrParsedFile) {
+        super(jfrParsedFile);
+    }
+
+    public boolean isConsumesCpu(int index) {
+        return consumesCpu.get(index);
+    }
+
+    public long getSamples(int index) {
+        return samples.get(index);
+    }
+
+    void add(long eventTime, int threadId, int filenameId, long correlationId, int stackTraceId, boolean consumesCpu, long samples) {
+        int index = addCommon(eventTime, threadId, filenameId, correlationId, stackTraceId);
+        this.consumesCpu.set(index, consumesCpu);
+        this.samples.set(index, samples);
+    }
+
+    @Override
+    JfrExecutionSamples newSamples(JfrParsedFile jfrParsedFile) {
+        return new JfrExecutionSamples(jfrParsedFile);
+    }
+
+    @Override
+    void add(JfrExecutionSamples source, int sourceIndex, int stackTraceId) {
+        int index = addCommon(source, sourceIndex, stackTraceId);
+        consumesCpu.set(index, source.consumesCpu.get(sourceIndex));
+        samples.set(index, source.samples.get(sourceIndex));
+    }
+
+    @Override
+    void addAll(JfrExecutionSamples source) {
+        int offset = addAllCommon(source);
+        samples.copyFrom(source.samples, 0, offset, source.size);
+        consumesCpu.copyFrom(source.consumesCpu, 0, offset, source.size);
+    }
+
+    @Override
+    List<JfrColumn> getTypeColumns() {
+        return List.of(consumesCpu, samples);
+    }
+}
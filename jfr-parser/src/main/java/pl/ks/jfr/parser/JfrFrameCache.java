@@ -0,0 +1,56 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import org.openjdk.jmc.common.IMCMethod;
+
+/**
+ * Frame ids of a single recording by JMC method and frame type. Frame names are formatted once per distinct method
+ * instead of once per frame of every distinct stack trace.
+ */
+@RequiredArgsConstructor
+class JfrFrameCache {
+    private static final int FRAME_TYPES = JftFrameType.values().length;
+
+    private final Map<IMCMethod, int[]> frameIds = new ConcurrentHashMap<>();
+    private final JfrParsedFile jfrParsedFile;
+
+    int getFrameId(IMCMethod method, JftFrameType type) {
+        int[] ids = frameIds.computeIfAbsent(method, ignored -> newIds());
+        int id = ids[type.ordinal()];
+        if (id == -1) {
+            // formatting twice is harmless, the frame dictionary returns the same id for the same name
+            id = jfrParsedFile.getFrameId(JfrParserImpl.getFrameName(jfrParsedFile, method.getType().getPackage().getName(),
+                    method.getType().getTypeName(), method.getMethodName(), method.getFormalDescriptor(), type));
+            ids[type.ordinal()] = id;
+        }
+        return id;
+    }
+
+    int size() {
+        return frameIds.size();
+    }
+
+    private static int[] newIds() {
+        int[] ids = new int[FRAME_TYPES];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+}
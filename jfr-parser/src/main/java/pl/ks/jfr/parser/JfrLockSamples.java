@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.BitSet;
+import java.util.List;
+
+public class JfrLockSamples extends JfrSamples<JfrLockSamples> {
+    private final JfrIntColumn monitorClassIds = new JfrIntColumn(INITIAL_CAPACITY);
+    private final JfrLongColumn durations = new JfrLongColumn(INITIAL_CAPACITY);
+
+    JfrLockSamples(JfrParsedFile jfrParsedFile) {
+        super(jfrParsedFile);
+    }
+
+    public int getMonitorClassId(int index) {
+        return monitorClassIds.get(index);
+    }
+
+    public String getMonitorClass(int index) {
+        return jfrParsedFile.getClassNames().get(monitorClassIds.get(index));
+    }
+
+    public long getDuration(int index) {
+        return durations.get(index);
+    }
+
+    @Override
+    public String getLeafFrame(int index) {
+        return getMonitorClass(index) + "_[i]";
+    }
+
+    void add(long eventTime, int threadId, int filenameId, long correlationId, int stackTraceId, int monitorClassId, long duration) {
+        int index = addCommon(eventTime, threadId, filenameId, correlationId, stackTraceId);
+        this.monitorClassIds.set(index, monitorClassId);
+        this.durations.set(index, duration);
+    }
+
+    @Override
+    JfrLockSamples newSamples(JfrParsedFile jfrParsedFile) {
+        return new JfrLockSamples(jfrParsedFile);
+    }
+
+    @Override
+    void add(JfrLockSamples source, int sourceIndex, int stackTraceId) {
+        int index = addCommon(source, sourceIndex, stackTraceId);
+        monitorClassIds.set(index, source.monitorClassIds.get(sourceIndex));
+        durations.set(index, source.durations.get(sourceIndex));
+    }
+
+    @Override
+    void addAll(JfrLockSamples source) {
+        int offset = addAllCommon(source);
+        monitorClassIds.copyFrom(source.monitorClassIds, 0, offset, source.size);
+        durations.copyFrom(source.durations, 0, offset, source.size);
+    }
+
+    @Override
+    void addUsedIds(BitSet stackTraceIds, BitSet threadIds, BitSet classIds) {
+        super.addUsedIds(stackTraceIds, threadIds, classIds);
+        for (int i = 0; i < size; i++) {
+            classIds.set(monitorClassIds.get(i));
+        }
+    }
+
+    @Override
+    void remapIds(int[] stackTraceIds, int[] threadIds, int[] classIds) {
+        super.remapIds(stackTraceIds, threadIds, classIds);
+        for (int i = 0; i < size; i++) {
+            monitorClassIds.set(i, classIds[monitorClassIds.get(i)]);
+        }
+    }
+
+    @Override
+    List<JfrColumn> getTypeColumns() {
+        return List.of(monitorClassIds, durations);
+    }
+}
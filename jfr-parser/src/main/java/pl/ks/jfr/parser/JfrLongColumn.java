@@ -0,0 +1,96 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+final class JfrLongColumn implements JfrColumn {
+    private long[] values;
+    private LongBuffer mappedValues;
+
+    JfrLongColumn(int capacity) {
+        values = new long[capacity];
+    }
+
+    long get(int index) {
+        return values != null ? values[index] : mappedValues.get(index);
+    }
+
+    void set(int index, long value) {
+        values[index] = value;
+    }
+
+    void copyFrom(JfrLongColumn source, int sourceIndex, int index, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (source.values != null) {
+            System.arraycopy(source.values, sourceIndex, values, index, length);
+        } else {
+            source.mappedValues.get(sourceIndex, values, index, length);
+        }
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        if (values == null) {
+            values = new long[Math.max(capacity, mappedValues.capacity())];
+            mappedValues.get(0, values, 0, mappedValues.capacity());
+            mappedValues = null;
+        } else if (capacity > values.length) {
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    @Override
+    public long map(FileChannel channel, long position, int size) throws IOException {
+        if (values == null) {
+            ensureCapacity(size);
+        }
+        LongBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) size * Long.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asLongBuffer();
+        mapped.put(0, values, 0, size);
+        mappedValues = mapped;
+        values = null;
+        return position + (long) size * Long.BYTES;
+    }
+
+    @Override
+    public long mappedBytes(int size) {
+        return (long) size * Long.BYTES;
+    }
+
+    @Override
+    public void write(DataOutput output, int size) throws IOException {
+        for (int i = 0; i < size; i++) {
+            output.writeLong(get(i));
+        }
+    }
+
+    @Override
+    public void read(DataInput input, int size) throws IOException {
+        for (int i = 0; i < size; i++) {
+            values[i] = input.readLong();
+        }
+    }
+}
@@ -17,35 +17,38 @@ package pl.ks.jfr.parser;
 
 import static java.util.function.Function.identity;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
-import org.apache.logging.log4j.util.Strings;
 import pl.ks.collapsed.CollapsedStack;
 import pl.ks.jfr.parser.tuning.AdditionalLevel;
 
-@RequiredArgsConstructor
 public class JfrParsedFile {
-    final List<JfrParsedExecutionSampleEvent> executionSamples = new ArrayList<>();
-    final List<JfrParsedExecutionSampleEvent> wallClockSamples = new ArrayList<>();
-    final List<JfrParsedExecutionSampleEvent> wallClockSamplesToProcess = new ArrayList<>();
-    final List<JfrParsedAllocationEvent> allocationSamples = new ArrayList<>();
-    final List<JfrParsedLockEvent> lockSamples = new ArrayList<>();
+    final JfrExecutionSamples executionSamples = new JfrExecutionSamples(this);
+    final JfrExecutionSamples wallClockSamples = new JfrExecutionSamples(this);
+    final JfrAllocationSamples allocationSamples = new JfrAllocationSamples(this);
+    final JfrLockSamples lockSamples = new JfrLockSamples(this);
     final List<JfrParsedCpuUsageEvent> cpuUsageSamples = new ArrayList<>();
     final List<String> filenames = new ArrayList<>();
 
     private final Map<String, String> canonicalStrings = new ConcurrentHashMap<>();
 
-    private final Instant parseStartDate = Instant.now();
+    Instant parseStartDate = Instant.now();
     @Getter
     private final boolean oldAsyncProfiler;
     @Getter
@@ -54,75 +57,239 @@ public class JfrParsedFile {
     private final boolean unifyLambdas;
     @Getter
     private final boolean throwOnErroredFile;
-    private Instant minEventDate;
-    private Instant maxEventDate;
+    @Getter
+    private final JfrStackTraceTable stackTraceTable;
+    @Getter
+    private final JfrStringDictionary threadNames;
+    @Getter
+    private final JfrStringDictionary classNames;
+    Instant minEventDate;
+    Instant maxEventDate;
+    StartEndDate appendedEventDates;
+
+    public JfrParsedFile(boolean oldAsyncProfiler, boolean wallClockExactTime, boolean unifyLambdas, boolean throwOnErroredFile) {
+        this.oldAsyncProfiler = oldAsyncProfiler;
+        this.wallClockExactTime = wallClockExactTime;
+        this.unifyLambdas = unifyLambdas;
+        this.throwOnErroredFile = throwOnErroredFile;
+        this.stackTraceTable = new JfrStackTraceTable(new JfrStringDictionary());
+        this.threadNames = new JfrStringDictionary();
+        this.classNames = new JfrStringDictionary();
+    }
+
+    JfrParsedFile(JfrParsedFile parent) {
+        this.oldAsyncProfiler = parent.oldAsyncProfiler;
+        this.wallClockExactTime = parent.wallClockExactTime;
+        this.unifyLambdas = parent.unifyLambdas;
+        this.throwOnErroredFile = parent.throwOnErroredFile;
+        this.stackTraceTable = parent.stackTraceTable;
+        this.threadNames = parent.threadNames;
+        this.classNames = parent.classNames;
+    }
 
     void addFilename(String filename) {
-        filenames.add(filename);
+        synchronized (filenames) {
+            filenames.add(filename);
+        }
     }
 
-    void addCpuUsageEvent(JfrParsedCpuUsageEvent event) {
-        synchronized (cpuUsageSamples) {
-            cpuUsageSamples.add(event);
+    int getFilenameId(String filename) {
+        synchronized (filenames) {
+            return filenames.indexOf(filename);
         }
     }
 
-    void addExecutionSampleEvent(JfrParsedExecutionSampleEvent event) {
-        synchronized (executionSamples) {
-            executionSamples.add(event);
+    void addCpuUsageEvents(List<JfrParsedCpuUsageEvent> events) {
+        synchronized (cpuUsageSamples) {
+            cpuUsageSamples.addAll(events);
         }
     }
 
-    void addWallClockSampleEvent(JfrParsedExecutionSampleEvent event) {
+    void addExecutionSamples(JfrExecutionSamples samples) {
         synchronized (executionSamples) {
-            if (wallClockExactTime) {
-                wallClockSamplesToProcess.add(event);
-                return;
-            }
-            wallClockSamples.add(event);
+            executionSamples.addAll(samples);
         }
     }
 
-    void addProcessedWallClockSampleEvent(JfrParsedExecutionSampleEvent event) {
-        synchronized (executionSamples) {
-            wallClockSamples.add(event);
+    void addWallClockSamples(JfrExecutionSamples samples) {
+        synchronized (wallClockSamples) {
+            wallClockSamples.addAll(samples);
         }
     }
 
-    void addAllocationSampleEvent(JfrParsedAllocationEvent event) {
+    void addAllocationSamples(JfrAllocationSamples samples) {
         synchronized (allocationSamples) {
-            allocationSamples.add(event);
+            allocationSamples.addAll(samples);
         }
     }
 
-    void addLockSampleEvent(JfrParsedLockEvent event) {
+    void addLockSamples(JfrLockSamples samples) {
         synchronized (lockSamples) {
-            lockSamples.add(event);
+            lockSamples.addAll(samples);
         }
     }
 
+    /**
+     * Adds names of parent files still referenced by samples of this file, filename ids of the samples are changed
+     * to point to the new list.
+     */
+    void addUsedFilenames(List<String> parentFilenames) {
+        List<JfrSamples<?>> allSamples = List.of(executionSamples, wallClockSamples, allocationSamples, lockSamples);
+        BitSet used = new BitSet(parentFilenames.size());
+        for (JfrSamples<?> samples : allSamples) {
+            for (int i = 0; i < samples.size(); i++) {
+                used.set(samples.getFilenameId(i));
+            }
+        }
+        Set<String> cpuUsageFilenames = cpuUsageSamples.stream()
+                .map(JfrParsedCpuUsageEvent::getFilename)
+                .collect(Collectors.toSet());
+
+        int[] filenameIds = new int[parentFilenames.size()];
+        for (int id = 0; id < parentFilenames.size(); id++) {
+            String filename = parentFilenames.get(id);
+            if (used.get(id) || cpuUsageFilenames.contains(filename)) {
+                filenameIds[id] = filenames.size();
+                addFilename(filename);
+            }
+        }
+        for (JfrSamples<?> samples : allSamples) {
+            samples.remapFilenameIds(filenameIds);
+        }
+    }
+
+    /**
+     * Fills own, empty dictionaries and stack trace table with the entries used by samples, which still refer to ids
+     * of the parent, and remaps the ids. Dictionaries shared with the parent would otherwise keep every stack trace,
+     * frame, thread and class a rolling recording has ever seen.
+     */
+    void addUsedDictionaries(JfrParsedFile parent) {
+        List<JfrSamples<?>> allSamples = List.of(executionSamples, wallClockSamples, allocationSamples, lockSamples);
+        BitSet usedStackTraces = new BitSet();
+        BitSet usedThreads = new BitSet();
+        BitSet usedClasses = new BitSet();
+        for (JfrSamples<?> samples : allSamples) {
+            samples.addUsedIds(usedStackTraces, usedThreads, usedClasses);
+        }
+        BitSet usedFrames = new BitSet();
+        for (int id = usedStackTraces.nextSetBit(0); id >= 0; id = usedStackTraces.nextSetBit(id + 1)) {
+            for (int frameId : parent.stackTraceTable.get(id).getFrameIds()) {
+                usedFrames.set(frameId);
+            }
+        }
+
+        int[] frameIds = addUsed(parent.getFrameDictionary(), getFrameDictionary(), usedFrames);
+        int[] stackTraceIds = new int[parent.stackTraceTable.size()];
+        for (int id = usedStackTraces.nextSetBit(0); id >= 0; id = usedStackTraces.nextSetBit(id + 1)) {
+            JfrStackTrace stackTrace = parent.stackTraceTable.get(id);
+            int[] stackTraceFrameIds = new int[stackTrace.getDepth()];
+            for (int i = 0; i < stackTraceFrameIds.length; i++) {
+                stackTraceFrameIds[i] = frameIds[stackTrace.getFrameId(i)];
+            }
+            stackTraceIds[id] = stackTraceTable.getOrAdd(stackTraceFrameIds, stackTrace.getLineNumbers()).getId();
+        }
+        int[] threadIds = addUsed(parent.threadNames, threadNames, usedThreads);
+        int[] classIds = addUsed(parent.classNames, classNames, usedClasses);
+        for (JfrSamples<?> samples : allSamples) {
+            samples.remapIds(stackTraceIds, threadIds, classIds);
+        }
+    }
+
+    private static int[] addUsed(JfrStringDictionary parent, JfrStringDictionary dictionary, BitSet used) {
+        int[] ids = new int[parent.size()];
+        for (int id = used.nextSetBit(0); id >= 0; id = used.nextSetBit(id + 1)) {
+            ids[id] = dictionary.getOrAdd(parent.get(id));
+        }
+        return ids;
+    }
+
     String getCanonicalString(final JfrParsedFile jfrParsedFile, String str) {
         String canonical = canonicalStrings.computeIfAbsent(str, aStr -> unifyLambdaAwareString(jfrParsedFile, aStr));
         return canonical == null ? canonicalStrings.get(str) : canonical;
     }
 
+    int getFrameId(String frame) {
+        return getStringId(stackTraceTable.getFrameDictionary(), frame);
+    }
+
+    int getThreadId(String threadName) {
+        return getStringId(threadNames, threadName);
+    }
+
+    int getClassId(String className) {
+        return getStringId(classNames, className);
+    }
+
+    private int getStringId(JfrStringDictionary dictionary, String str) {
+        return dictionary.getOrAdd(unifyLambdas ? getCanonicalString(this, str) : str);
+    }
+
     private static String unifyLambdaAwareString(final JfrParsedFile jfrParsedFile, final String aStr) {
         return jfrParsedFile.isUnifyLambdas() ? aStr.replaceAll("\\.0x................", ".unified") : aStr;
     }
 
+    public void mapSamples(Path directory) throws IOException {
+        executionSamples.mapColumns(directory);
+        wallClockSamples.mapColumns(directory);
+        allocationSamples.mapColumns(directory);
+        lockSamples.mapColumns(directory);
+    }
+
     void calculateAggregatedDates() {
         minEventDate = getMinDate(List.of(
-                getMinDate(executionSamples, JfrParsedExecutionSampleEvent::getEventTime),
-                getMinDate(allocationSamples, JfrParsedAllocationEvent::getEventTime),
-                getMinDate(lockSamples, JfrParsedLockEvent::getEventTime)
+                getMinDate(executionSamples),
+                getMinDate(allocationSamples),
+                getMinDate(lockSamples)
         ), identity());
         maxEventDate = getMaxDate(List.of(
-                getMaxDate(executionSamples, JfrParsedExecutionSampleEvent::getEventTime),
-                getMaxDate(allocationSamples, JfrParsedAllocationEvent::getEventTime),
-                getMaxDate(lockSamples, JfrParsedLockEvent::getEventTime)
+                getMaxDate(executionSamples),
+                getMaxDate(allocationSamples),
+                getMaxDate(lockSamples)
+        ), identity());
+    }
+
+    void calculateAggregatedDates(JfrParsedFile parent, JfrParsedFile appended) {
+        minEventDate = getMinDate(List.of(parent.minEventDate, appended.minEventDate), identity());
+        maxEventDate = getMaxDate(List.of(parent.maxEventDate, appended.maxEventDate), identity());
+        // wall-clock samples are not part of the event dates, but appending them changes results as well
+        appendedEventDates = StartEndDate.builder()
+                .startDate(appended.getMinSampleDate())
+                .endDate(appended.getMaxSampleDate())
+                .build();
+    }
+
+    private Instant getMinSampleDate() {
+        return getMinDate(List.of(
+                getMinDate(executionSamples),
+                getMinDate(wallClockSamples),
+                getMinDate(allocationSamples),
+                getMinDate(lockSamples)
+        ), identity());
+    }
+
+    private Instant getMaxSampleDate() {
+        return getMaxDate(List.of(
+                getMaxDate(executionSamples),
+                getMaxDate(wallClockSamples),
+                getMaxDate(allocationSamples),
+                getMaxDate(lockSamples)
         ), identity());
     }
 
+    private static Instant getMinDate(JfrSamples<?> samples) {
+        OptionalLong min = IntStream.range(0, samples.size()).parallel()
+                .mapToLong(samples::getEventTimeMillis)
+                .min();
+        return min.isPresent() ? Instant.ofEpochMilli(min.getAsLong()) : Instant.MAX;
+    }
+
+    private static Instant getMaxDate(JfrSamples<?> samples) {
+        OptionalLong max = IntStream.range(0, samples.size()).parallel()
+                .mapToLong(samples::getEventTimeMillis)
+                .max();
+        return max.isPresent() ? Instant.ofEpochMilli(max.getAsLong()) : Instant.MIN;
+    }
+
     private <T> Instant getMinDate(List<T> events, Function<T, Instant> toDateFunction) {
         return events.stream().parallel()
                 .map(toDateFunction)
@@ -135,23 +302,19 @@ public class JfrParsedFile {
                 .reduce(Instant.MIN, (i1, i2) -> i1.compareTo(i2) < 0 ? i2 : i1);
     }
 
-    public List<JfrParsedExecutionSampleEvent> getExecutionSamples() {
+    public JfrExecutionSamples getExecutionSamples() {
         return executionSamples;
     }
 
-    public List<JfrParsedExecutionSampleEvent> getWallClockSamples() {
+    public JfrExecutionSamples getWallClockSamples() {
         return wallClockSamples;
     }
 
-    public List<JfrParsedExecutionSampleEvent> getWallClockSamplesToProcess() {
-        return wallClockSamplesToProcess;
-    }
-
-    public List<JfrParsedAllocationEvent> getAllocationSamples() {
+    public JfrAllocationSamples getAllocationSamples() {
         return allocationSamples;
     }
 
-    public List<JfrParsedLockEvent> getLockSamples() {
+    public JfrLockSamples getLockSamples() {
         return lockSamples;
     }
 
@@ -171,34 +334,80 @@ public class JfrParsedFile {
         return maxEventDate;
     }
 
+    /**
+     * Dates of the first and the last sample added by {@link JfrParser#append}, {@code null} if the file was not
+     * created by appending.
+     */
+    public StartEndDate getAppendedEventDates() {
+        return appendedEventDates;
+    }
+
     public List<String> getFilenames() {
         return filenames;
     }
 
-    public <T> CollapsedStack asCollapsed(
-            List<T> samples,
+    public JfrStringDictionary getFrameDictionary() {
+        return stackTraceTable.getFrameDictionary();
+    }
+
+    public BitSet findStackTracesContaining(String part) {
+        return stackTraceTable.findStackTraces(frame -> frame.contains(part));
+    }
+
+    public JfrCollapsedSamples collapse(
+            JfrSamples<?> samples,
+            IntStream indices,
             Set<AdditionalLevel> additionalLevels,
-            BiFunction<T, Set<AdditionalLevel>, List<String[]>> toStackFunction,
-            Function<T, Long> toCountFunction
+            IntToLongFunction toCountFunction
+    ) {
+        JfrCollapsedSamples collapsedSamples = new JfrCollapsedSamples(stackTraceTable, additionalLevels.contains(AdditionalLevel.LINE_NUMBERS));
+        IntFunction<String> prefixes = samples.getPrefixes(additionalLevels);
+        indices.parallel()
+                .forEach(index -> collapsedSamples.add(prefixes.apply(index), samples.getStackTraceId(index),
+                        samples.getLeafFrame(index), toCountFunction.applyAsLong(index)));
+        return collapsedSamples;
+    }
+
+    public JfrCollapsedSamples collapse(
+            JfrSamples<?> samples,
+            IntStream indices,
+            Set<AdditionalLevel> additionalLevels
     ) {
-        CollapsedStack collapsedStack = new CollapsedStack();
-        samples.stream().parallel()
-                .forEach(entry -> {
-                    List<String> subStackTraces = toStackFunction.apply(entry, additionalLevels).stream()
-                            .map(strings -> Strings.join(Arrays.asList(strings), ';'))
-                            .toList();
-                    String stackJoined = Strings.join(subStackTraces, ';');
-                    collapsedStack.add(stackJoined, toCountFunction.apply(entry));
-                });
-        return collapsedStack;
-    }
-
-    public <T> CollapsedStack asCollapsed(
-            List<T> samples,
+        return collapse(samples, indices, additionalLevels, ignored -> 1L);
+    }
+
+    public JfrCollapsedSamples collapse(
+            JfrSamples<?> samples,
+            int[] indices,
             Set<AdditionalLevel> additionalLevels,
-            BiFunction<T, Set<AdditionalLevel>, List<String[]>> toStackFunction
+            IntToLongFunction toCountFunction
+    ) {
+        return collapse(samples, Arrays.stream(indices), additionalLevels, toCountFunction);
+    }
+
+    public JfrCollapsedSamples collapse(
+            JfrSamples<?> samples,
+            int[] indices,
+            Set<AdditionalLevel> additionalLevels
+    ) {
+        return collapse(samples, Arrays.stream(indices), additionalLevels, ignored -> 1L);
+    }
+
+    public CollapsedStack asCollapsed(
+            JfrSamples<?> samples,
+            int[] indices,
+            Set<AdditionalLevel> additionalLevels,
+            IntToLongFunction toCountFunction
+    ) {
+        return collapse(samples, indices, additionalLevels, toCountFunction).toCollapsedStack();
+    }
+
+    public CollapsedStack asCollapsed(
+            JfrSamples<?> samples,
+            int[] indices,
+            Set<AdditionalLevel> additionalLevels
     ) {
-        return asCollapsed(samples, additionalLevels, toStackFunction, ignored -> 1L);
+        return asCollapsed(samples, indices, additionalLevels, ignored -> 1L);
     }
 
     public enum Direction {
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Binary snapshot of a parsed file: dictionaries, stack traces, sample columns, CPU usage, filenames and dates. Ids are
+ * stored as they are, so reading a snapshot does not touch JMC at all.
+ */
+@UtilityClass
+public class JfrParsedFileSnapshot {
+    private static final int MAGIC = 0x4a465253;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public void write(JfrParsedFile jfrParsedFile, Path path) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeBoolean(jfrParsedFile.isOldAsyncProfiler());
+            output.writeBoolean(jfrParsedFile.isWallClockExactTime());
+            output.writeBoolean(jfrParsedFile.isUnifyLambdas());
+            output.writeBoolean(jfrParsedFile.isThrowOnErroredFile());
+            writeInstant(output, jfrParsedFile.parseStartDate);
+            writeInstant(output, jfrParsedFile.minEventDate);
+            writeInstant(output, jfrParsedFile.maxEventDate);
+            synchronized (jfrParsedFile.filenames) {
+                output.writeInt(jfrParsedFile.filenames.size());
+                for (String filename : jfrParsedFile.filenames) {
+                    writeString(output, filename);
+                }
+            }
+            writeDictionary(output, jfrParsedFile.getFrameDictionary());
+            writeDictionary(output, jfrParsedFile.getThreadNames());
+            writeDictionary(output, jfrParsedFile.getClassNames());
+            writeStackTraces(output, jfrParsedFile.getStackTraceTable());
+            jfrParsedFile.executionSamples.writeColumns(output);
+            jfrParsedFile.wallClockSamples.writeColumns(output);
+            jfrParsedFile.allocationSamples.writeColumns(output);
+            jfrParsedFile.lockSamples.writeColumns(output);
+            synchronized (jfrParsedFile.cpuUsageSamples) {
+                output.writeInt(jfrParsedFile.cpuUsageSamples.size());
+                for (JfrParsedCpuUsageEvent event : jfrParsedFile.cpuUsageSamples) {
+                    writeString(output, event.getJvmUser().toString());
+                    writeString(output, event.getJvmSystem().toString());
+                    writeString(output, event.getMachineTotal().toString());
+                    writeString(output, event.getFilename());
+                    writeInstant(output, event.getEventTime());
+                }
+            }
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Every length read is checked against the size of the file, so a truncated or corrupted snapshot fails with an
+     * {@link IOException} instead of allocating arrays of arbitrary size.
+     */
+    public JfrParsedFile read(Path path) throws IOException {
+        long limit = Files.size(path);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a JFR snapshot: " + path);
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported JFR snapshot version " + version + ": " + path);
+            }
+            JfrParsedFile jfrParsedFile = new JfrParsedFile(input.readBoolean(), input.readBoolean(), input.readBoolean(), input.readBoolean());
+            jfrParsedFile.parseStartDate = readInstant(input);
+            jfrParsedFile.minEventDate = readInstant(input);
+            jfrParsedFile.maxEventDate = readInstant(input);
+            int filenames = readLength(input, limit);
+            for (int i = 0; i < filenames; i++) {
+                jfrParsedFile.addFilename(readString(input, limit));
+            }
+            readDictionary(input, jfrParsedFile.getFrameDictionary(), limit);
+            readDictionary(input, jfrParsedFile.getThreadNames(), limit);
+            readDictionary(input, jfrParsedFile.getClassNames(), limit);
+            readStackTraces(input, jfrParsedFile.getStackTraceTable(), jfrParsedFile.getFrameDictionary().size(), limit);
+            jfrParsedFile.executionSamples.readColumns(input, readLength(input, limit));
+            jfrParsedFile.wallClockSamples.readColumns(input, readLength(input, limit));
+            jfrParsedFile.allocationSamples.readColumns(input, readLength(input, limit));
+            jfrParsedFile.lockSamples.readColumns(input, readLength(input, limit));
+            int cpuUsageSamples = readLength(input, limit);
+            for (int i = 0; i < cpuUsageSamples; i++) {
+                jfrParsedFile.cpuUsageSamples.add(JfrParsedCpuUsageEvent.builder()
+                        .jvmUser(new BigDecimal(readString(input, limit)))
+                        .jvmSystem(new BigDecimal(readString(input, limit)))
+                        .machineTotal(new BigDecimal(readString(input, limit)))
+                        .filename(readString(input, limit))
+                        .eventTime(readInstant(input))
+                        .build());
+            }
+            return jfrParsedFile;
+        }
+    }
+
+    private void writeDictionary(DataOutputStream output, JfrStringDictionary dictionary) throws IOException {
+        int size = dictionary.size();
+        output.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            writeString(output, dictionary.get(id));
+        }
+    }
+
+    private void readDictionary(DataInputStream input, JfrStringDictionary dictionary, long limit) throws IOException {
+        int size = readLength(input, limit);
+        for (int id = 0; id < size; id++) {
+            dictionary.getOrAdd(readString(input, limit));
+        }
+    }
+
+    private void writeStackTraces(DataOutputStream output, JfrStackTraceTable stackTraceTable) throws IOException {
+        int size = stackTraceTable.size();
+        output.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            JfrStackTrace stackTrace = stackTraceTable.get(id);
+            output.writeInt(stackTrace.getDepth());
+            for (int i = 0; i < stackTrace.getDepth(); i++) {
+                output.writeInt(stackTrace.getFrameId(i));
+                output.writeInt(stackTrace.getLineNumber(i));
+            }
+        }
+    }
+
+    private void readStackTraces(DataInputStream input, JfrStackTraceTable stackTraceTable, int frames, long limit) throws IOException {
+        int size = readLength(input, limit);
+        for (int id = 0; id < size; id++) {
+            int depth = readLength(input, limit);
+            int[] frameIds = new int[depth];
+            int[] lineNumbers = new int[depth];
+            for (int i = 0; i < depth; i++) {
+                frameIds[i] = input.readInt();
+                lineNumbers[i] = input.readInt();
+                if (frameIds[i] < 0 || frameIds[i] >= frames) {
+                    throw new IOException("Corrupted JFR snapshot, unknown frame " + frameIds[i]);
+                }
+            }
+            stackTraceTable.getOrAdd(frameIds, lineNumbers);
+        }
+    }
+
+    private void writeInstant(DataOutputStream output, Instant instant) throws IOException {
+        output.writeLong(instant.getEpochSecond());
+        output.writeInt(instant.getNano());
+    }
+
+    private Instant readInstant(DataInputStream input) throws IOException {
+        return Instant.ofEpochSecond(input.readLong(), input.readInt());
+    }
+
+    private void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private String readString(DataInputStream input, long limit) throws IOException {
+        byte[] bytes = new byte[readLength(input, limit)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readLength(DataInputStream input, long limit) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > limit) {
+            throw new IOException("Corrupted JFR snapshot, invalid length " + length);
+        }
+        return length;
+    }
+}
@@ -16,10 +16,25 @@
 package pl.ks.jfr.parser;
 
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.List;
 
 public interface JfrParser {
     JfrParsedFile parse(List<Path> jfrFiles, boolean oldAsyncProfiler, boolean wallClockExactTime, boolean unifyLambdas, boolean throwOnErroredFile);
 
+    /**
+     * Parses only the given files and returns a new file with samples of the parent followed by the new ones. The
+     * parent is left untouched, stack traces and names are shared with it.
+     */
+    JfrParsedFile append(JfrParsedFile parent, List<Path> jfrFiles);
+
+    /**
+     * Returns a new file without samples older than the given date and without names of files that have no samples
+     * left. Stack traces, frames, thread and class names are copied only if retained samples use them, so memory of
+     * a rolling recording is bounded by the samples it keeps. The parent itself is returned when none of its samples
+     * is older than the date.
+     */
+    JfrParsedFile evictBefore(JfrParsedFile parent, Instant date);
+
     JfrParsedFile trim(JfrParsedFile parent, String method, JfrParsedFile.Direction direction);
 }
@@ -15,18 +15,26 @@
  */
 package pl.ks.jfr.parser;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration(proxyBeanMethods = false)
 class JfrParserConfiguration {
     @Bean
-    JfrCollapsedParser jfrCollapsedParser() {
-        return new JfrCollapsedParserImpl();
+    JfrCollapsedParser jfrCollapsedParser(@Value("${jfr-parser.chunk-parsing-parallelism:0}") int chunkParsingParallelism,
+                                          @Value("${jfr-parser.streaming:true}") boolean streaming) {
+        return new JfrCollapsedParserImpl(chunkParsingParallelism(chunkParsingParallelism), streaming);
     }
 
     @Bean
-    JfrParser jfrParser() {
-        return new JfrParserImpl();
+    JfrParser jfrParser(@Value("${jfr-parser.file-parsing-parallelism:4}") int fileParsingParallelism,
+                        @Value("${jfr-parser.chunk-parsing-parallelism:0}") int chunkParsingParallelism,
+                        @Value("${jfr-parser.streaming:true}") boolean streaming) {
+        return new JfrParserImpl(fileParsingParallelism, chunkParsingParallelism(chunkParsingParallelism), streaming);
+    }
+
+    private static int chunkParsingParallelism(int chunkParsingParallelism) {
+        return chunkParsingParallelism > 0 ? chunkParsingParallelism : Runtime.getRuntime().availableProcessors();
     }
 }
@@ -15,6 +15,10 @@
  */
 package pl.ks.jfr.parser;
 
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
 import org.openjdk.jmc.common.IDescribable;
 import org.openjdk.jmc.common.IMCFrame;
 import org.openjdk.jmc.common.IMCMethod;
@@ -184,6 +188,76 @@ class JfrParserHelper {
         return builder.toString();
     }
 
+    static String fetchFlatStackTrace(RecordedEvent event, RecordedStackTrace stackTrace, JfrCollapsedParserContext context,
+                                      Map<RecordedStackTrace, String> flatFrames) {
+        StringBuilder builder = new StringBuilder();
+
+        if (context.isIncludeEcid() && JfrRecordedEvents.hasEcid(event)) {
+            builder.append(JfrRecordedEvents.getEcid(event)).append(";");
+        }
+
+        if (context.isIncludeAnyTimestampAndDate()) {
+            long startTime = JfrRecordedEvents.getStartTime(event);
+            if (context.isIncludeTimestamp100MSAndDate()) {
+                long time = startTime / 1000000 / 100;
+                builder.append(JfrCollapsedParserImpl.TIME_STAMP_FORMAT.get().format(time)).append("_");
+                builder.append(JfrCollapsedParserImpl.OUTPUT_FORMAT.get().format(new Date(time * 100))).append("_[k];");
+            }
+            if (context.isIncludeTimestamp1SAndDate()) {
+                long time = startTime / 1000000 / 1000;
+                builder.append(JfrCollapsedParserImpl.TIME_STAMP_FORMAT.get().format(time)).append("_");
+                builder.append(JfrCollapsedParserImpl.OUTPUT_FORMAT.get().format(new Date(time * 1000))).append("_[k];");
+            }
+            if (context.isIncludeTimestamp10SAndDate()) {
+                long time = startTime / 1000000 / 10000;
+                builder.append(JfrCollapsedParserImpl.TIME_STAMP_FORMAT.get().format(time)).append("_");
+                builder.append(JfrCollapsedParserImpl.OUTPUT_FORMAT.get().format(new Date(time * 10000))).append("_[k];");
+            }
+        }
+
+        if (context.isIncludeFileName()) {
+            String filename = context.getFile().getFileName().toString();
+            builder.append(filename).append("_[i];");
+        }
+
+        if (context.isIncludeThreadName()) {
+            builder.append(JfrRecordedEvents.getThreadName(JfrRecordedEvents.getThread(event))).append(";");
+        }
+
+        builder.append(flatFrames.computeIfAbsent(stackTrace, JfrParserHelper::fetchFlatFrames));
+        return builder.toString();
+    }
+
+    private static String fetchFlatFrames(RecordedStackTrace stackTrace) {
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        StringBuilder builder = new StringBuilder();
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            RecordedMethod method = frames.get(i).getMethod();
+
+            if (i != frames.size() - 1) {
+                builder.append(";");
+            }
+
+            String packageName = JfrStreamingParser.getPackageName(method.getType());
+            if (packageName != null && packageName.length() > 0) {
+                builder.append(replaceCharacter(packageName, '/', '.'));
+                builder.append("/");
+            }
+            if (!method.getDescriptor().equals("()L;")) {
+                String className = replaceCharacter(JfrStreamingParser.getTypeName(method.getType(), packageName), '/', '.');
+                if (className.length() > 0) {
+                    builder.append(className);
+                    builder.append(".");
+                }
+            }
+            builder.append(method.getName());
+            if (method.getDescriptor().equals("(Lk;)L;")) {
+                builder.append("_[k]");
+            }
+        }
+        return builder.toString();
+    }
+
     static IMemberAccessor<String, IItem> findStateAccessor(EventArray eventArray) {
         for (Map.Entry<IAccessorKey<?>, ? extends IDescribable> accessorKey : eventArray.getType().getAccessorKeys().entrySet()) {
             if (accessorKey.getKey().getIdentifier().equals("state")) {
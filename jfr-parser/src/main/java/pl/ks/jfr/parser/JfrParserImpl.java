@@ -1,27 +1,36 @@
 package pl.ks.jfr.parser;
 
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.openjdk.jmc.common.IMCFrame;
-import org.openjdk.jmc.common.IMCMethod;
 import org.openjdk.jmc.common.IMCStackTrace;
 import org.openjdk.jmc.common.unit.ITypedQuantity;
 import org.openjdk.jmc.common.unit.UnitLookup;
+import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
 import org.openjdk.jmc.flightrecorder.JfrAttributes;
 import org.openjdk.jmc.flightrecorder.internal.EventArray;
 import org.openjdk.jmc.flightrecorder.internal.EventArrays;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.util.StopWatch;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.file.Path;
-import java.time.temporal.ChronoUnit;
+import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static pl.ks.jfr.parser.JfrParserHelper.isAsyncAllocNewTLABEvent;
 import static pl.ks.jfr.parser.JfrParserHelper.isAsyncAllocOutsideTLABEvent;
@@ -34,16 +43,22 @@ import static pl.ks.jfr.parser.JftFrameType.*;
 import static pl.ks.jfr.parser.ParserUtil.getFlightRecording;
 
 @Slf4j
+@RequiredArgsConstructor
 class JfrParserImpl implements JfrParser {
     private static final Map<Class, Field> FIELD_MAP = new ConcurrentHashMap<>();
 
+    private final int fileParsingParallelism;
+    private final int chunkParsingParallelism;
+    private final boolean streaming;
+
     @Override
     public JfrParsedFile parse(List<Path> jfrFiles, boolean oldAsyncProfiler, boolean wallClockExactTime, boolean unifyLambdas, boolean throwOnErroredFile) {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
         JfrParsedFile jfrParsedFile = new JfrParsedFile(oldAsyncProfiler, wallClockExactTime, unifyLambdas, throwOnErroredFile);
 
-        jfrFiles.forEach(path -> parseFile(path, jfrParsedFile));
+        jfrFiles.forEach(path -> jfrParsedFile.addFilename(path.getFileName().toString()));
+        parseFiles(jfrFiles, jfrParsedFile);
         jfrParsedFile.calculateAggregatedDates();
         stopWatch.stop();
         log.info("Parsing took: {}ms", stopWatch.getLastTaskTimeMillis());
@@ -51,251 +66,300 @@ class JfrParserImpl implements JfrParser {
     }
 
     @Override
-    public JfrParsedFile trim(JfrParsedFile parent, String method, JfrParsedFile.Direction direction) {
+    public JfrParsedFile append(JfrParsedFile parent, List<Path> jfrFiles) {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        // new files are parsed on their own, with the filenames of the parent, so their filename ids stay valid after merge
+        JfrParsedFile appended = new JfrParsedFile(parent);
+        parent.filenames.forEach(appended::addFilename);
+        jfrFiles.forEach(path -> appended.addFilename(path.getFileName().toString()));
+        parseFiles(jfrFiles, appended);
+        appended.calculateAggregatedDates();
+
+        JfrParsedFile merged = new JfrParsedFile(parent);
+        merged.parseStartDate = parent.parseStartDate;
+        appended.filenames.forEach(merged::addFilename);
+        merged.addWallClockSamples(parent.wallClockSamples);
+        merged.addWallClockSamples(appended.wallClockSamples);
+        merged.addExecutionSamples(parent.executionSamples);
+        merged.addExecutionSamples(appended.executionSamples);
+        merged.addAllocationSamples(parent.allocationSamples);
+        merged.addAllocationSamples(appended.allocationSamples);
+        merged.addLockSamples(parent.lockSamples);
+        merged.addLockSamples(appended.lockSamples);
+        merged.addCpuUsageEvents(parent.cpuUsageSamples);
+        merged.addCpuUsageEvents(appended.cpuUsageSamples);
+        merged.wallClockSamples.appendTimeIndex(parent.wallClockSamples);
+        merged.executionSamples.appendTimeIndex(parent.executionSamples);
+        merged.allocationSamples.appendTimeIndex(parent.allocationSamples);
+        merged.lockSamples.appendTimeIndex(parent.lockSamples);
+        merged.calculateAggregatedDates(parent, appended);
+        stopWatch.stop();
+        log.info("Appending {} files took: {}ms", jfrFiles.size(), stopWatch.getLastTaskTimeMillis());
+        return merged;
+    }
+
+    @Override
+    public JfrParsedFile evictBefore(JfrParsedFile parent, Instant date) {
+        long dateMillis = date.toEpochMilli();
+        if (!hasSamplesBefore(parent.wallClockSamples, dateMillis) && !hasSamplesBefore(parent.executionSamples, dateMillis)
+                && !hasSamplesBefore(parent.allocationSamples, dateMillis) && !hasSamplesBefore(parent.lockSamples, dateMillis)) {
+            return parent;
+        }
         JfrParsedFile child = new JfrParsedFile(parent.isOldAsyncProfiler(), parent.isWallClockExactTime(), parent.isUnifyLambdas(), parent.isThrowOnErroredFile());
-        parent.filenames.forEach(child::addFilename);
-        parent.wallClockSamples.stream()
-                .parallel()
-                .forEach(event -> {
-                    var trimmedEvent = createTrimmedEvent(event, method, direction);
-                    if (trimmedEvent != null) {
-                        child.addProcessedWallClockSampleEvent(trimmedEvent);
-                    }
-                });
-        parent.executionSamples.stream()
-                .parallel()
-                .forEach(event -> {
-                    var trimmedEvent = createTrimmedEvent(event, method, direction);
-                    if (trimmedEvent != null) {
-                        child.addExecutionSampleEvent(trimmedEvent);
-                    }
-                });
-        parent.allocationSamples.stream()
-                .parallel()
-                .forEach(event -> {
-                    var trimmedEvent = createTrimmedEvent(event, method, direction);
-                    if (trimmedEvent != null) {
-                        child.addAllocationSampleEvent(trimmedEvent);
-                    }
-                });
-        parent.lockSamples.stream()
-                .parallel()
-                .forEach(event -> {
-                    var trimmedEvent = createTrimmedEvent(event, method, direction);
-                    if (trimmedEvent != null) {
-                        child.addLockSampleEvent(trimmedEvent);
-                    }
-                });
-        parent.cpuUsageSamples.stream()
-                .parallel()
-                .forEach(child::addCpuUsageEvent);
+        child.parseStartDate = parent.parseStartDate;
+        child.addWallClockSamples(retainSamples(child, parent.wallClockSamples, dateMillis));
+        child.addExecutionSamples(retainSamples(child, parent.executionSamples, dateMillis));
+        child.addAllocationSamples(retainSamples(child, parent.allocationSamples, dateMillis));
+        child.addLockSamples(retainSamples(child, parent.lockSamples, dateMillis));
+        retainTimeIndex(child.wallClockSamples, parent.wallClockSamples, dateMillis);
+        retainTimeIndex(child.executionSamples, parent.executionSamples, dateMillis);
+        retainTimeIndex(child.allocationSamples, parent.allocationSamples, dateMillis);
+        retainTimeIndex(child.lockSamples, parent.lockSamples, dateMillis);
+        child.addCpuUsageEvents(parent.cpuUsageSamples.stream()
+                .filter(event -> !event.getEventTime().isBefore(date))
+                .toList());
+        child.addUsedFilenames(parent.filenames);
+        child.addUsedDictionaries(parent);
         child.calculateAggregatedDates();
         return child;
     }
 
-    private JfrParsedExecutionSampleEvent createTrimmedEvent(JfrParsedExecutionSampleEvent event, String method, JfrParsedFile.Direction direction) {
-        var stackTrace = getTrimmedStackTrace(event, method, direction, null);
-        if (stackTrace == null) {
-            return null;
-        }
+    private static boolean hasSamplesBefore(JfrSamples<?> samples, long dateMillis) {
+        return IntStream.range(0, samples.size()).parallel()
+                .anyMatch(index -> samples.getEventTimeMillis(index) < dateMillis);
+    }
 
-        var lineNumbers = event.getLineNumbers();
+    private static <S extends JfrSamples<S>> S retainSamples(JfrParsedFile child, S samples, long dateMillis) {
+        return IntStream.range(0, samples.size()).parallel().collect(
+                () -> samples.newSamples(child),
+                (retained, index) -> {
+                    if (samples.getEventTimeMillis(index) >= dateMillis) {
+                        retained.add(samples, index, samples.getStackTraceId(index));
+                    }
+                },
+                (retained, other) -> retained.addAll(other)
+        );
+    }
 
-        switch (direction) {
-            case UP -> {
-                lineNumbers = Arrays.copyOfRange(lineNumbers,
-                        event.getStackTrace().length - stackTrace.length, event.getStackTrace().length);
-            }
-            case DOWN -> {
-                lineNumbers = Arrays.copyOfRange(lineNumbers, 0, stackTrace.length);
-            }
-        }
-        ;
-
-        return JfrParsedExecutionSampleEvent.builder()
-                .consumesCpu(event.isConsumesCpu())
-                .threadName(event.getThreadName())
-                .correlationId(event.getCorrelationId())
-                .filename(event.getFilename())
-                .eventTime(event.getEventTime())
-                .stackTrace(stackTrace)
-                .lineNumbers(lineNumbers)
-                .samples(event.getSamples())
-                .build();
+    private static void retainTimeIndex(JfrSamples<?> retained, JfrSamples<?> samples, long dateMillis) {
+        retained.retainTimeIndex(samples, index -> samples.getEventTimeMillis(index) >= dateMillis);
     }
 
-    private JfrParsedAllocationEvent createTrimmedEvent(JfrParsedAllocationEvent event, String method, JfrParsedFile.Direction direction) {
-        var stackTrace = getTrimmedStackTrace(event, method, direction, JfrParsedAllocationEvent::getObjectClass);
-        if (stackTrace == null) {
-            return null;
+    private void parseFiles(List<Path> jfrFiles, JfrParsedFile jfrParsedFile) {
+        int threads = Math.min(fileParsingParallelism, jfrFiles.size());
+        if (threads <= 1) {
+            jfrFiles.forEach(path -> parseFile(path, jfrParsedFile, streaming, chunkParsingParallelism));
+        } else {
+            parseFilesConcurrently(jfrFiles, jfrParsedFile, threads, streaming, chunkParsingParallelism);
         }
-
-        return JfrParsedAllocationEvent.builder()
-                .threadName(event.getThreadName())
-                .correlationId(event.getCorrelationId())
-                .filename(event.getFilename())
-                .eventTime(event.getEventTime())
-                .stackTrace(stackTrace)
-                .objectClass(event.getObjectClass())
-                .size(event.getSize())
-                .outsideTLAB(event.isOutsideTLAB())
-                .build();
     }
 
-    private JfrParsedLockEvent createTrimmedEvent(JfrParsedLockEvent event, String method, JfrParsedFile.Direction direction) {
-        var stackTrace = getTrimmedStackTrace(event, method, direction, JfrParsedLockEvent::getMonitorClass);
-        if (stackTrace == null) {
-            return null;
+    private static void parseFilesConcurrently(List<Path> jfrFiles, JfrParsedFile jfrParsedFile, int threads, boolean streaming, int chunkParsingParallelism) {
+        log.info("Parsing {} files with {} threads", jfrFiles.size(), threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger parsedFiles = new AtomicInteger();
+        try {
+            List<Future<?>> futures = jfrFiles.stream()
+                    .<Future<?>>map(path -> executor.submit(() -> {
+                        parseFile(path, jfrParsedFile, streaming, chunkParsingParallelism);
+                        log.info("Parsed {} files of {}", parsedFiles.incrementAndGet(), jfrFiles.size());
+                    }))
+                    .toList();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            // parseFile only lets errors out when throwOnErroredFile is set, the remaining files are not needed then
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
-        return JfrParsedLockEvent.builder()
-                .threadName(event.getThreadName())
-                .correlationId(event.getCorrelationId())
-                .filename(event.getFilename())
-                .eventTime(event.getEventTime())
-                .stackTrace(stackTrace)
-                .monitorClass(event.getMonitorClass())
-                .duration(event.getDuration())
-                .build();
+    @Override
+    public JfrParsedFile trim(JfrParsedFile parent, String method, JfrParsedFile.Direction direction) {
+        JfrParsedFile child = new JfrParsedFile(parent);
+        int methodId = parent.getFrameDictionary().getId(method);
+        parent.filenames.forEach(child::addFilename);
+        child.addWallClockSamples(trimSamples(child, parent.wallClockSamples, methodId, method, direction, null));
+        child.addExecutionSamples(trimSamples(child, parent.executionSamples, methodId, method, direction, null));
+        child.addAllocationSamples(trimSamples(child, parent.allocationSamples, methodId, method, direction, parent.allocationSamples::getObjectClass));
+        child.addLockSamples(trimSamples(child, parent.lockSamples, methodId, method, direction, parent.lockSamples::getMonitorClass));
+        child.addCpuUsageEvents(parent.cpuUsageSamples);
+        child.calculateAggregatedDates();
+        return child;
     }
 
-    private <T extends JfrParsedCommonStackTraceEvent> String[] getTrimmedStackTrace(
-            T event,
+    private <S extends JfrSamples<S>> S trimSamples(
+            JfrParsedFile child,
+            S samples,
+            int methodId,
             String method,
             JfrParsedFile.Direction direction,
-            Function<T, String> additionalEntryFunction
+            IntFunction<String> additionalEntryFunction
     ) {
-        int pos = findMethodPosition(event, method);
+        return IntStream.range(0, samples.size()).parallel().collect(
+                () -> samples.newSamples(child),
+                (trimmed, index) -> {
+                    int stackTraceId = getTrimmedStackTraceId(child, samples, index, methodId, method, direction, additionalEntryFunction);
+                    if (stackTraceId != -1) {
+                        trimmed.add(samples, index, stackTraceId);
+                    }
+                },
+                (trimmed, other) -> trimmed.addAll(other)
+        );
+    }
+
+    private int getTrimmedStackTraceId(
+            JfrParsedFile child,
+            JfrSamples<?> samples,
+            int index,
+            int methodId,
+            String method,
+            JfrParsedFile.Direction direction,
+            IntFunction<String> additionalEntryFunction
+    ) {
+        JfrStackTrace stackTrace = samples.getStackTrace(index);
+        int pos = methodId == -1 ? -1 : stackTrace.indexOf(methodId);
         if (pos == -1) {
-            if (additionalEntryFunction != null && additionalEntryFunction.apply(event).equals(method)) {
+            if (additionalEntryFunction != null && additionalEntryFunction.apply(index).equals(method)) {
                 switch (direction) {
                     case UP -> {
-                        return new String[0];
+                        return child.getStackTraceTable().getSubStackTrace(stackTrace, 0, 0).getId();
                     }
                     case DOWN -> {
-                        return Arrays.copyOf(event.getStackTrace(), event.getStackTrace().length);
+                        return stackTrace.getId();
                     }
                 }
             }
 
-            return null;
+            return -1;
         }
 
         switch (direction) {
             case UP -> {
-                return Arrays.copyOfRange(event.getStackTrace(), pos, event.getStackTrace().length);
+                return child.getStackTraceTable().getSubStackTrace(stackTrace, pos, stackTrace.getDepth()).getId();
             }
             case DOWN -> {
-                return Arrays.copyOfRange(event.getStackTrace(), 0, pos + 1);
+                return child.getStackTraceTable().getSubStackTrace(stackTrace, 0, pos + 1).getId();
             }
         }
         throw new IllegalArgumentException();
     }
 
-    private int findMethodPosition(JfrParsedCommonStackTraceEvent event, String method) {
-        int i = 0;
-        for (i = 0; i < event.getStackTrace().length; i++) {
-            String frame = event.getStackTrace()[i];
-            if (frame.equals(method)) {
-                break;
-            }
-        }
-        if (i == event.getStackTrace().length) {
-            return -1;
-        }
-        return i;
-    }
-
-    private static void parseFile(Path file, JfrParsedFile jfrParsedFile) {
+    private static void parseFile(Path file, JfrParsedFile jfrParsedFile, boolean streaming, int chunkParsingParallelism) {
         String filename = file.getFileName().toString();
 
         log.info("Input file: " + filename);
         log.info("Parsing JFR");
 
         try {
-            jfrParsedFile.addFilename(filename);
-            EventArrays flightRecording = getFlightRecording(file);
-
-            for (EventArray eventArray : flightRecording.getArrays()) {
-                if (isExecutionSampleEvent(eventArray)) {
-                    processExecutionSample(jfrParsedFile, eventArray, filename);
-                } else if (isWallClockSampleEvent(eventArray)) {
-                    processWallClockSample(jfrParsedFile, eventArray, filename);
-                } else if (isLockEvent(eventArray)) {
-                    processLockEvent(jfrParsedFile, eventArray, filename);
-                } else if (isAsyncAllocNewTLABEvent(eventArray)) {
-                    processAllocEvent(jfrParsedFile, eventArray, filename, false);
-                } else if (isAsyncAllocOutsideTLABEvent(eventArray)) {
-                    processAllocEvent(jfrParsedFile, eventArray, filename, true);
-                } else if (isCpuLoadEvent(eventArray)) {
-                    processCpuEvent(jfrParsedFile, eventArray, filename);
-                }
+            JfrExecutionSamples wallClockSamplesToProcess = new JfrExecutionSamples(jfrParsedFile);
+            if (streaming) {
+                JfrStreamingParser.parse(jfrParsedFile, filename, file, chunkParsingParallelism, wallClockSamplesToProcess);
+            } else {
+                parseFlightRecording(file, jfrParsedFile, filename, wallClockSamplesToProcess);
             }
 
-            if (jfrParsedFile.isWallClockExactTime() && !jfrParsedFile.getWallClockSamplesToProcess().isEmpty()) {
-                extractExactTime(jfrParsedFile);
-                jfrParsedFile.getWallClockSamplesToProcess().clear();
+            if (wallClockSamplesToProcess.size() > 0) {
+                extractExactTime(jfrParsedFile, wallClockSamplesToProcess);
             }
         } catch (Exception e) {
-            log.error("Fatal error", e);
+            log.error("Fatal error while parsing " + filename, e);
             if (jfrParsedFile.isThrowOnErroredFile()) {
                 throw new RuntimeException(e);
             }
         }
     }
 
-    private static void extractExactTime(JfrParsedFile jfrParsedFile) {
-        List<JfrParsedExecutionSampleEvent> toProcess = jfrParsedFile.getWallClockSamplesToProcess();
-        Map<String, List<JfrParsedExecutionSampleEvent>> threadToSamples = toProcess.stream()
+    private static void parseFlightRecording(Path file, JfrParsedFile jfrParsedFile, String filename, JfrExecutionSamples wallClockSamplesToProcess)
+            throws IOException, CouldNotLoadRecordingException {
+        EventArrays flightRecording = getFlightRecording(file);
+        int filenameId = jfrParsedFile.getFilenameId(filename);
+        JfrFrameCache frameCache = new JfrFrameCache(jfrParsedFile);
+        JfrStackTraceCache stackTraceCache = new JfrStackTraceCache(stackTrace -> getStackTrace(jfrParsedFile, frameCache, stackTrace.getFrames()));
+
+        for (EventArray eventArray : flightRecording.getArrays()) {
+            if (isExecutionSampleEvent(eventArray)) {
+                processExecutionSample(jfrParsedFile, stackTraceCache, eventArray, filenameId);
+            } else if (isWallClockSampleEvent(eventArray)) {
+                processWallClockSample(jfrParsedFile, stackTraceCache, eventArray, filenameId, wallClockSamplesToProcess);
+            } else if (isLockEvent(eventArray)) {
+                processLockEvent(jfrParsedFile, stackTraceCache, eventArray, filenameId);
+            } else if (isAsyncAllocNewTLABEvent(eventArray)) {
+                processAllocEvent(jfrParsedFile, stackTraceCache, eventArray, filenameId, false);
+            } else if (isAsyncAllocOutsideTLABEvent(eventArray)) {
+                processAllocEvent(jfrParsedFile, stackTraceCache, eventArray, filenameId, true);
+            } else if (isCpuLoadEvent(eventArray)) {
+                processCpuEvent(jfrParsedFile, eventArray, filename);
+            }
+        }
+        log.info("Converted {} distinct stack traces with {} distinct methods from {}", stackTraceCache.size(), frameCache.size(), filename);
+    }
+
+    private static void extractExactTime(JfrParsedFile jfrParsedFile, JfrExecutionSamples toProcess) {
+        Map<Integer, List<Integer>> threadToSamples = IntStream.range(0, toProcess.size())
                 .parallel()
-                .collect(Collectors.groupingBy(JfrParsedExecutionSampleEvent::getThreadName));
-        List<ArrayList<JfrParsedExecutionSampleEvent>> threadSamples = threadToSamples.entrySet().stream()
+                .boxed()
+                .collect(Collectors.groupingBy(toProcess::getThreadId));
+        List<ArrayList<Integer>> threadSamples = threadToSamples.values().stream()
                 .parallel()
-                .map(entry -> new ArrayList<>(entry.getValue()))
+                .map(ArrayList::new)
                 .toList();
-        threadSamples.stream()
+        jfrParsedFile.addWallClockSamples(threadSamples.stream()
                 .parallel()
-                .forEach(samples -> extractExactTimeForThread(jfrParsedFile, samples));
+                .map(samples -> extractExactTimeForThread(jfrParsedFile, toProcess, samples))
+                .collect(() -> new JfrExecutionSamples(jfrParsedFile), JfrExecutionSamples::addAll, JfrExecutionSamples::addAll));
     }
 
-    private static void extractExactTimeForThread(JfrParsedFile jfrParsedFile, List<JfrParsedExecutionSampleEvent> samples) {
+    private static JfrExecutionSamples extractExactTimeForThread(JfrParsedFile jfrParsedFile, JfrExecutionSamples toProcess, List<Integer> samples) {
+        JfrExecutionSamples processed = new JfrExecutionSamples(jfrParsedFile);
         if (samples.isEmpty()) {
-            return;
+            return processed;
         }
-        samples.sort(Comparator.comparing(JfrParsedExecutionSampleEvent::getEventTime));
-        JfrParsedExecutionSampleEvent currentSample = samples.get(0);
+        samples.sort(Comparator.comparingLong(toProcess::getEventTimeMillis));
+        int currentSample = samples.get(0);
         long sumDiff = 0;
         long countDiff = 0;
         for (int i = 1; i < samples.size(); i++) {
-            JfrParsedExecutionSampleEvent nextSample = samples.get(i);
-            if (currentSample.getSamples() == 1) {
-                jfrParsedFile.addProcessedWallClockSampleEvent(currentSample);
+            int nextSample = samples.get(i);
+            if (toProcess.getSamples(currentSample) == 1) {
+                processed.add(toProcess, currentSample, toProcess.getStackTraceId(currentSample));
                 currentSample = nextSample;
                 continue;
             }
 
-            long diff = ChronoUnit.MILLIS.between(currentSample.getEventTime(), nextSample.getEventTime());
-            diff /= currentSample.getSamples();
+            long diff = toProcess.getEventTimeMillis(nextSample) - toProcess.getEventTimeMillis(currentSample);
+            diff /= toProcess.getSamples(currentSample);
             sumDiff += diff;
             countDiff++;
-            JfrParsedExecutionSampleEvent currentSampleWithOneSample = currentSample.withSamples(1);
-            for (int j = 0; j < currentSample.getSamples(); j++) {
-                jfrParsedFile.addProcessedWallClockSampleEvent(
-                        currentSampleWithOneSample.withEventTime(currentSample.getEventTime().plus(diff * j, ChronoUnit.MILLIS))
-                );
-            }
+            addWithExactTime(processed, toProcess, currentSample, diff);
             currentSample = nextSample;
         }
         if (countDiff == 0) {
-            jfrParsedFile.addProcessedWallClockSampleEvent(currentSample);
+            processed.add(toProcess, currentSample, toProcess.getStackTraceId(currentSample));
         } else {
-            long diff = sumDiff / countDiff;
-            JfrParsedExecutionSampleEvent currentSampleWithOneSample = currentSample.withSamples(1);
-            for (int j = 0; j < currentSample.getSamples(); j++) {
-                jfrParsedFile.addProcessedWallClockSampleEvent(
-                        currentSampleWithOneSample.withEventTime(currentSample.getEventTime().plus(diff * j, ChronoUnit.MILLIS))
-                );
-            }
+            addWithExactTime(processed, toProcess, currentSample, sumDiff / countDiff);
+        }
+        return processed;
+    }
+
+    private static void addWithExactTime(JfrExecutionSamples processed, JfrExecutionSamples toProcess, int sample, long diff) {
+        long eventTime = toProcess.getEventTimeMillis(sample);
+        for (int j = 0; j < toProcess.getSamples(sample); j++) {
+            processed.add(
+                    TimeUnit.MILLISECONDS.toNanos(eventTime + diff * j),
+                    toProcess.getThreadId(sample),
+                    toProcess.getFilenameId(sample),
+                    toProcess.getCorrelationId(sample),
+                    toProcess.getStackTraceId(sample),
+                    toProcess.isConsumesCpu(sample),
+                    1
+            );
         }
     }
 
@@ -306,23 +370,23 @@ class JfrParserImpl implements JfrParser {
                 .jvmUserAccessor(JfrParserHelper.findCpuJvmUserAccessor(eventArray))
                 .machineTotalAccessor(JfrParserHelper.findMachineTotalAccessor(eventArray))
                 .build();
-        Arrays.stream(eventArray.getEvents()).parallel().forEach(event -> {
+        jfrParsedFile.addCpuUsageEvents(Arrays.stream(eventArray.getEvents()).parallel().map(event -> {
             ITypedQuantity jvmUser = accessors.getJvmUserAccessor().getMember(event);
             ITypedQuantity jvmSystem = accessors.getJvmSystemAccessor().getMember(event);
             ITypedQuantity machineTotal = accessors.getMachineTotalAccessor().getMember(event);
 
-            jfrParsedFile.addCpuUsageEvent(JfrParsedCpuUsageEvent.builder()
+            return JfrParsedCpuUsageEvent.builder()
                     .eventTime(new Date(accessors.getStartTimeAccessor().getMember(event).longValue() / 1000000).toInstant())
                     .filename(filename)
                     .machineTotal(BigDecimal.valueOf(machineTotal.doubleValue()).setScale(2, RoundingMode.HALF_EVEN))
                     .jvmUser(BigDecimal.valueOf(jvmUser.doubleValue()).setScale(2, RoundingMode.HALF_EVEN))
                     .jvmSystem(BigDecimal.valueOf(jvmSystem.doubleValue()).setScale(2, RoundingMode.HALF_EVEN))
-                    .build());
-        });
+                    .build();
+        }).toList());
 
     }
 
-    private static void processLockEvent(JfrParsedFile jfrParsedFile, EventArray eventArray, String filename) {
+    private static void processLockEvent(JfrParsedFile jfrParsedFile, JfrStackTraceCache stackTraceCache, EventArray eventArray, int filenameId) {
         JfrAccessors accessors = JfrAccessors.builder()
                 .stackTraceAccessor(JfrAttributes.EVENT_STACKTRACE.getAccessor(eventArray.getType()))
                 .threadAccessor(JfrAttributes.EVENT_THREAD.getAccessor(eventArray.getType()))
@@ -332,23 +396,23 @@ class JfrParserImpl implements JfrParser {
                 .ecidAccessor(JfrParserHelper.findEcidAccessor(eventArray))
                 .build();
 
-        Arrays.stream(eventArray.getEvents()).parallel().forEach(event -> {
-            List<? extends IMCFrame> frames = accessors.getStackTraceAccessor().getMember(event).getFrames();
-            jfrParsedFile.addLockSampleEvent(JfrParsedLockEvent.builder()
-                    .correlationId(accessors.getEcidAccessor() != null ? accessors.getEcidAccessor().getMember(event).longValue() : 0L)
-                    .duration(accessors.getLockDurationAccessor() != null ? accessors.getLockDurationAccessor().getMember(event).in(UnitLookup.NANOSECOND).longValue() : 0L)
-                    .filename(filename)
-                    .threadName(jfrParsedFile.getCanonicalString(jfrParsedFile, accessors.getThreadAccessor().getMember(event).getThreadName()))
-                    .eventTime(new Date(accessors.getStartTimeAccessor().getMember(event).longValue() / 1000000).toInstant())
-                    .stackTrace(getStackTrace(jfrParsedFile, frames))
-                    .lineNumbers(getLineNumbers(jfrParsedFile, frames))
-                    .monitorClass(jfrParsedFile.getCanonicalString(jfrParsedFile, accessors.getMonitorClassAccessor().getMember(event).getFullName()))
-                    .build()
-            );
-        });
+        jfrParsedFile.addLockSamples(Arrays.stream(eventArray.getEvents()).parallel().collect(
+                () -> new JfrLockSamples(jfrParsedFile),
+                (samples, event) -> samples.add(
+                        accessors.getStartTimeAccessor().getMember(event).longValue(),
+                        jfrParsedFile.getThreadId(accessors.getThreadAccessor().getMember(event).getThreadName()),
+                        filenameId,
+                        accessors.getEcidAccessor() != null ? accessors.getEcidAccessor().getMember(event).longValue() : 0L,
+                        stackTraceCache.get(accessors.getStackTraceAccessor().getMember(event)).getId(),
+                        jfrParsedFile.getClassId(accessors.getMonitorClassAccessor().getMember(event).getFullName()),
+                        accessors.getLockDurationAccessor() != null ? accessors.getLockDurationAccessor().getMember(event).in(UnitLookup.NANOSECOND).longValue() : 0L
+                ),
+                JfrLockSamples::addAll
+        ));
     }
 
-    private static void processAllocEvent(JfrParsedFile jfrParsedFile, EventArray eventArray, String filename, boolean outsideTLAB) {
+    private static void processAllocEvent(JfrParsedFile jfrParsedFile, JfrStackTraceCache stackTraceCache, EventArray eventArray, int filenameId,
+                                          boolean outsideTLAB) {
         JfrAccessors accessors = JfrAccessors.builder()
                 .stackTraceAccessor(JfrAttributes.EVENT_STACKTRACE.getAccessor(eventArray.getType()))
                 .threadAccessor(JfrAttributes.EVENT_THREAD.getAccessor(eventArray.getType()))
@@ -358,29 +422,30 @@ class JfrParserImpl implements JfrParser {
                 .ecidAccessor(JfrParserHelper.findEcidAccessor(eventArray))
                 .build();
 
-        Arrays.stream(eventArray.getEvents()).parallel().forEach(event -> {
-            IMCStackTrace stackTrace = accessors.getStackTraceAccessor().getMember(event);
-            if (stackTrace == null) {
-                return;
-            }
-            List<? extends IMCFrame> frames = stackTrace.getFrames();
-            jfrParsedFile.addAllocationSampleEvent(JfrParsedAllocationEvent.builder()
-                    .correlationId(accessors.getEcidAccessor() != null ? accessors.getEcidAccessor().getMember(event).longValue() : 0L)
-                    .filename(filename)
-                    .threadName(jfrParsedFile.getCanonicalString(jfrParsedFile, accessors.getThreadAccessor().getMember(event).getThreadName()))
-                    .eventTime(new Date(accessors.getStartTimeAccessor().getMember(event).longValue() / 1000000).toInstant())
-                    .stackTrace(getStackTrace(jfrParsedFile, frames))
-                    .lineNumbers(getLineNumbers(jfrParsedFile, frames))
-                    .objectClass(jfrParsedFile.getCanonicalString(jfrParsedFile, accessors.getObjectClassAccessor().getMember(event).getFullName()))
-                    .size(accessors.getAllocationSizeAccessor().getMember(event).longValue())
-                    .outsideTLAB(outsideTLAB)
-                    .build()
-            );
-        });
-
+        jfrParsedFile.addAllocationSamples(Arrays.stream(eventArray.getEvents()).parallel().collect(
+                () -> new JfrAllocationSamples(jfrParsedFile),
+                (samples, event) -> {
+                    IMCStackTrace stackTrace = accessors.getStackTraceAccessor().getMember(event);
+                    if (stackTrace == null) {
+                        return;
+                    }
+                    samples.add(
+                            accessors.getStartTimeAccessor().getMember(event).longValue(),
+                            jfrParsedFile.getThreadId(accessors.getThreadAccessor().getMember(event).getThreadName()),
+                            filenameId,
+                            accessors.getEcidAccessor() != null ? accessors.getEcidAccessor().getMember(event).longValue() : 0L,
+                            stackTraceCache.get(stackTrace).getId(),
+                            jfrParsedFile.getClassId(accessors.getObjectClassAccessor().getMember(event).getFullName()),
+                            accessors.getAllocationSizeAccessor().getMember(event).longValue(),
+                            outsideTLAB
+                    );
+                },
+                JfrAllocationSamples::addAll
+        ));
     }
 
-    private static void processWallClockSample(JfrParsedFile jfrParsedFile, EventArray eventArray, String filename) {
+    private static void processWallClockSample(JfrParsedFile jfrParsedFile, JfrStackTraceCache stackTraceCache, EventArray eventArray, int filenameId,
+                                               JfrExecutionSamples wallClockSamplesToProcess) {
         JfrAccessors accessors = JfrAccessors.builder()
                 .stackTraceAccessor(JfrAttributes.EVENT_STACKTRACE.getAccessor(eventArray.getType()))
                 .threadAccessor(JfrParserHelper.findThreadAccessor(eventArray))
@@ -390,30 +455,34 @@ class JfrParserImpl implements JfrParser {
                 .samplesAccessor(JfrParserHelper.findSamplesAccessor(eventArray))
                 .build();
 
-        Arrays.stream(eventArray.getEvents()).parallel().forEach(event -> {
-            IMCStackTrace stackTrace = accessors.getStackTraceAccessor().getMember(event);
-            if (stackTrace == null) {
-                return;
-            }
-            List<? extends IMCFrame> frames = stackTrace.getFrames();
-            final JfrParsedExecutionSampleEvent sampleEvent = JfrParsedExecutionSampleEvent.builder()
-                    .consumesCpu(accessors.getStateAccessor() != null && JfrParserHelper.isConsumingCpu(accessors.getStateAccessor().getMember(event)))
-                    .correlationId(accessors.getEcidAccessor() != null ? accessors.getEcidAccessor().getMember(event).longValue() : 0L)
-                    .filename(filename)
-                    .threadName(jfrParsedFile.getCanonicalString(jfrParsedFile, accessors.getThreadAccessor().getMember(event).getThreadName()))
-                    .eventTime(new Date(accessors.getStartTimeAccessor().getMember(event).longValue() / 1000000).toInstant())
-                    .stackTrace(getStackTrace(jfrParsedFile, frames))
-                    .lineNumbers(getLineNumbers(jfrParsedFile, frames))
-                    .samples(accessors.getSamplesAccessor() != null ? accessors.getSamplesAccessor().getMember(event).longValue() : 0L)
-                    .build();
-//            if (sampleEvent.stackTraceContains("QueueingClickhouseDao.exec")){
-//            if (sampleEvent.getThreadName().startsWith("ch-congestion-control-pool-")){
-                jfrParsedFile.addWallClockSampleEvent(sampleEvent);
-//            }
-        });
+        JfrExecutionSamples sampleEvents = Arrays.stream(eventArray.getEvents()).parallel().collect(
+                () -> new JfrExecutionSamples(jfrParsedFile),
+                (samples, event) -> {
+                    IMCStackTrace stackTrace = accessors.getStackTraceAccessor().getMember(event);
+                    if (stackTrace == null) {
+                        return;
+                    }
+                    samples.add(
+                            accessors.getStartTimeAccessor().getMember(event).longValue(),
+                            jfrParsedFile.getThreadId(accessors.getThreadAccessor().getMember(event).getThreadName()),
+                            filenameId,
+                            accessors.getEcidAccessor() != null ? accessors.getEcidAccessor().getMember(event).longValue() : 0L,
+                            stackTraceCache.get(stackTrace).getId(),
+                            accessors.getStateAccessor() != null && JfrParserHelper.isConsumingCpu(accessors.getStateAccessor().getMember(event)),
+                            accessors.getSamplesAccessor() != null ? accessors.getSamplesAccessor().getMember(event).longValue() : 0L
+                    );
+                },
+                JfrExecutionSamples::addAll
+        );
+
+        if (jfrParsedFile.isWallClockExactTime()) {
+            wallClockSamplesToProcess.addAll(sampleEvents);
+        } else {
+            jfrParsedFile.addWallClockSamples(sampleEvents);
+        }
     }
 
-    private static void processExecutionSample(JfrParsedFile jfrParsedFile, EventArray eventArray, String filename) {
+    private static void processExecutionSample(JfrParsedFile jfrParsedFile, JfrStackTraceCache stackTraceCache, EventArray eventArray, int filenameId) {
         JfrAccessors accessors = JfrAccessors.builder()
                 .stackTraceAccessor(JfrAttributes.EVENT_STACKTRACE.getAccessor(eventArray.getType()))
                 .threadAccessor(JfrAttributes.EVENT_THREAD.getAccessor(eventArray.getType()))
@@ -422,81 +491,72 @@ class JfrParserImpl implements JfrParser {
                 .ecidAccessor(JfrParserHelper.findEcidAccessor(eventArray))
                 .build();
 
-        Arrays.stream(eventArray.getEvents()).parallel().forEach(event -> {
-            List<? extends IMCFrame> frames = accessors.getStackTraceAccessor().getMember(event).getFrames();
-            jfrParsedFile.addExecutionSampleEvent(JfrParsedExecutionSampleEvent.builder()
-                    .consumesCpu(accessors.getStateAccessor() != null && JfrParserHelper.isConsumingCpu(accessors.getStateAccessor().getMember(event)))
-                    .correlationId(accessors.getEcidAccessor() != null ? accessors.getEcidAccessor().getMember(event).longValue() : 0L)
-                    .filename(filename)
-                    .threadName(jfrParsedFile.getCanonicalString(jfrParsedFile, accessors.getThreadAccessor().getMember(event).getThreadName()))
-                    .eventTime(new Date(accessors.getStartTimeAccessor().getMember(event).longValue() / 1000000).toInstant())
-                    .stackTrace(getStackTrace(jfrParsedFile, frames))
-                    .lineNumbers(getLineNumbers(jfrParsedFile, frames))
-                    .samples(1)
-                    .build()
-            );
-        });
+        jfrParsedFile.addExecutionSamples(Arrays.stream(eventArray.getEvents()).parallel().collect(
+                () -> new JfrExecutionSamples(jfrParsedFile),
+                (samples, event) -> samples.add(
+                        accessors.getStartTimeAccessor().getMember(event).longValue(),
+                        jfrParsedFile.getThreadId(accessors.getThreadAccessor().getMember(event).getThreadName()),
+                        filenameId,
+                        accessors.getEcidAccessor() != null ? accessors.getEcidAccessor().getMember(event).longValue() : 0L,
+                        stackTraceCache.get(accessors.getStackTraceAccessor().getMember(event)).getId(),
+                        accessors.getStateAccessor() != null && JfrParserHelper.isConsumingCpu(accessors.getStateAccessor().getMember(event)),
+                        1
+                ),
+                JfrExecutionSamples::addAll
+        ));
     }
 
-    private static int[] getLineNumbers(JfrParsedFile jfrParsedFile, List<? extends IMCFrame> frames) {
+    static JfrStackTrace getStackTrace(JfrParsedFile jfrParsedFile, JfrFrameCache frameCache, List<? extends IMCFrame> frames) {
+        int[] frameIds = new int[frames.size()];
         int[] lineNumbers = new int[frames.size()];
         for (int i = 0; i < frames.size(); i++) {
             IMCFrame frame = frames.get(i);
             Integer lineNumber = frame.getFrameLineNumber();
             lineNumbers[frames.size() - i - 1] = lineNumber == null ? -1 : lineNumber;
+            frameIds[frames.size() - i - 1] = frameCache.getFrameId(frame.getMethod(), getType(frame));
         }
-        return lineNumbers;
+        return jfrParsedFile.getStackTraceTable().getOrAdd(frameIds, lineNumbers);
     }
 
-    private static String[] getStackTrace(JfrParsedFile jfrParsedFile, List<? extends IMCFrame> frames) {
-        String[] stackTrace = new String[frames.size()];
-        for (int i = 0; i < frames.size(); i++) {
-            StringBuilder stackTraceBuilder = new StringBuilder();
-            IMCFrame frame = frames.get(i);
-
-            JftFrameType type = getType(frame);
-
-            IMCMethod method = frame.getMethod();
-            String packageName = method.getType().getPackage().getName() == null ? "" : replaceCharacter(method.getType().getPackage().getName(), '/', '.');
-            if (packageName.length() > 0) {
-                stackTraceBuilder.append(packageName);
-                stackTraceBuilder.append("/");
+    static String getFrameName(JfrParsedFile jfrParsedFile, String packageName, String typeName, String methodName, String descriptor, JftFrameType type) {
+        StringBuilder stackTraceBuilder = new StringBuilder();
+        if (packageName != null && packageName.length() > 0) {
+            stackTraceBuilder.append(replaceCharacter(packageName, '/', '.'));
+            stackTraceBuilder.append("/");
+        }
+        if (!descriptor.equals("()L;")) {
+            String className = replaceCharacter(typeName, '/', '.');
+            if (className.length() > 0) {
+                stackTraceBuilder.append(className);
+                stackTraceBuilder.append(".");
             }
-            if (!method.getFormalDescriptor().equals("()L;")) {
-                String className = replaceCharacter(method.getType().getTypeName(), '/', '.');
-                if (className.length() > 0) {
-                    stackTraceBuilder.append(className);
-                    stackTraceBuilder.append(".");
+        }
+        stackTraceBuilder.append(methodName);
+        if (descriptor.equals("(Lk;)L;")) {
+            stackTraceBuilder.append("_[k]");
+        } else if (!jfrParsedFile.isOldAsyncProfiler()) {
+            switch (type) {
+                case TYPE_INTERPRETED -> {
+                    stackTraceBuilder.append("_[0]");
                 }
-            }
-            stackTraceBuilder.append(method.getMethodName());
-            if (method.getFormalDescriptor().equals("(Lk;)L;")) {
-                stackTraceBuilder.append("_[k]");
-            } else if (!jfrParsedFile.isOldAsyncProfiler()) {
-                switch (type) {
-                    case TYPE_INTERPRETED -> {
-                        stackTraceBuilder.append("_[0]");
-                    }
-                    case TYPE_JIT_COMPILED -> {
-                        stackTraceBuilder.append("_[j]");
-                    }
-                    case TYPE_INLINED -> {
-                        stackTraceBuilder.append("_[i]");
-                    }
-                    case TYPE_KERNEL -> {
-                        stackTraceBuilder.append("_[k]");
-                    }
-                    case TYPE_C1_COMPILED -> {
-                        stackTraceBuilder.append("_[1]");
-                    }
+                case TYPE_JIT_COMPILED -> {
+                    stackTraceBuilder.append("_[j]");
+                }
+                case TYPE_INLINED -> {
+                    stackTraceBuilder.append("_[i]");
+                }
+                case TYPE_KERNEL -> {
+                    stackTraceBuilder.append("_[k]");
+                }
+                case TYPE_C1_COMPILED -> {
+                    stackTraceBuilder.append("_[1]");
                 }
             }
-            stackTrace[frames.size() - i - 1] = jfrParsedFile.getCanonicalString(jfrParsedFile, stackTraceBuilder.toString());
         }
-        return stackTrace;
+        return stackTraceBuilder.toString();
     }
 
-    private static JftFrameType getType(IMCFrame frame) {
+    static JftFrameType getType(IMCFrame frame) {
         Field field = FIELD_MAP.get(frame.getClass());
         if (field == null) {
             synchronized (FIELD_MAP) {
@@ -512,23 +572,33 @@ class JfrParserImpl implements JfrParser {
             }
         }
         Object type = ReflectionUtils.getField(field, frame);
+        return type instanceof String ? getType((String) type) : TYPE_JIT_COMPILED;
+    }
+
+    static JftFrameType getType(String type) {
         if (type == null) {
             return TYPE_JIT_COMPILED;
         }
-        if (type instanceof String) {
-            if ("Native".equals(type)) {
+        switch (type) {
+            case "Native" -> {
                 return TYPE_NATIVE;
-            } else if ("Kernel".equals(type)) {
+            }
+            case "Kernel" -> {
                 return TYPE_KERNEL;
-            } else if ("Inlined".equals(type)) {
+            }
+            case "Inlined" -> {
                 return TYPE_INLINED;
-            } else if ("JIT compiled".equals(type)) {
+            }
+            case "JIT compiled" -> {
                 return TYPE_JIT_COMPILED;
-            } else if ("C++".equals(type)) {
+            }
+            case "C++" -> {
                 return TYPE_CPP;
-            } else if ("C1 compiled".equals(type)) {
+            }
+            case "C1 compiled" -> {
                 return TYPE_C1_COMPILED;
-            } else if ("Interpreted".equals(type)) {
+            }
+            case "Interpreted" -> {
                 return TYPE_INTERPRETED;
             }
         }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedObject;
+import jdk.jfr.consumer.RecordedThread;
+
+public class JfrRecordedEvents {
+    static final String EXECUTION_SAMPLE = "jdk.ExecutionSample";
+    static final String WALL_CLOCK_SAMPLE = "profiler.WallClockSample";
+    static final String MONITOR_ENTER = "jdk.JavaMonitorEnter";
+    static final String ALLOCATION_IN_NEW_TLAB = "jdk.ObjectAllocationInNewTLAB";
+    static final String ALLOCATION_OUTSIDE_TLAB = "jdk.ObjectAllocationOutsideTLAB";
+    static final String CPU_LOAD = "jdk.CPULoad";
+    static final String OS_INFORMATION = "jdk.OSInformation";
+    static final String CPU_INFORMATION = "jdk.CPUInformation";
+    static final String JVM_INFORMATION = "jdk.JVMInformation";
+    static final String INITIAL_SYSTEM_PROPERTY = "jdk.InitialSystemProperty";
+
+    private JfrRecordedEvents() {
+    }
+
+    public static long getStartTime(RecordedEvent event) {
+        Instant startTime = event.getStartTime();
+        return TimeUnit.SECONDS.toNanos(startTime.getEpochSecond()) + startTime.getNano();
+    }
+
+    public static RecordedThread getThread(RecordedEvent event) {
+        return event.hasField("sampledThread") ? event.getThread("sampledThread") : event.getThread();
+    }
+
+    public static String getThreadName(RecordedThread thread) {
+        return thread.getJavaName() != null ? thread.getJavaName() : thread.getOSName();
+    }
+
+    public static boolean hasEcid(RecordedEvent event) {
+        return event.hasField("contextId");
+    }
+
+    public static long getEcid(RecordedEvent event) {
+        return hasEcid(event) ? event.getLong("contextId") : 0L;
+    }
+
+    static String getString(RecordedObject object, String field) {
+        if (object == null || !object.hasField(field)) {
+            return null;
+        }
+        Object value = object.getValue(field);
+        if (value instanceof RecordedObject struct && struct.getFields().size() == 1) {
+            // symbols, thread states and frame types of recordings without simpleType metadata are not unwrapped by the JDK parser
+            value = struct.getValue(struct.getFields().get(0).getName());
+        }
+        return value instanceof String ? (String) value : null;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.BitSet;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Indices of samples grouped by a dense int key, like the thread id, indices of a group stay in ascending order.
+ */
+final class JfrSampleGroups {
+    private final int[] offsets;
+    private final int[] indices;
+
+    private JfrSampleGroups(int[] offsets, int[] indices) {
+        this.offsets = offsets;
+        this.indices = indices;
+    }
+
+    static JfrSampleGroups build(int size, int keys, IntUnaryOperator keyFunction) {
+        int[] offsets = new int[keys + 1];
+        for (int i = 0; i < size; i++) {
+            offsets[keyFunction.applyAsInt(i) + 1]++;
+        }
+        for (int key = 0; key < keys; key++) {
+            offsets[key + 1] += offsets[key];
+        }
+        int[] positions = new int[keys];
+        System.arraycopy(offsets, 0, positions, 0, keys);
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[positions[keyFunction.applyAsInt(i)]++] = i;
+        }
+        return new JfrSampleGroups(offsets, indices);
+    }
+
+    int size() {
+        return indices.length;
+    }
+
+    int keys() {
+        return offsets.length - 1;
+    }
+
+    void addTo(int key, BitSet found) {
+        for (int i = offsets[key]; i < offsets[key + 1]; i++) {
+            found.set(indices[i]);
+        }
+    }
+}
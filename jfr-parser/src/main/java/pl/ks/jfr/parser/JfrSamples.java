@@ -0,0 +1,400 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import static pl.ks.jfr.parser.tuning.AdditionalLevel.ECID;
+import static pl.ks.jfr.parser.tuning.AdditionalLevel.FILENAME;
+import static pl.ks.jfr.parser.tuning.AdditionalLevel.THREAD;
+import static pl.ks.jfr.parser.tuning.AdditionalLevel.TIMESTAMP_100_MS;
+import static pl.ks.jfr.parser.tuning.AdditionalLevel.TIMESTAMP_10_S;
+import static pl.ks.jfr.parser.tuning.AdditionalLevel.TIMESTAMP_1_S;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import lombok.extern.slf4j.Slf4j;
+import pl.ks.jfr.parser.tuning.AdditionalLevel;
+
+/**
+ * Struct-of-arrays storage of stack trace samples, a sample is addressed by its index. Event times are kept in epoch
+ * nanoseconds, but exposed with the millisecond precision the rest of the toolkit works with.
+ */
+@Slf4j
+public abstract class JfrSamples<S extends JfrSamples<S>> {
+    static final int INITIAL_CAPACITY = 64;
+
+    final JfrParsedFile jfrParsedFile;
+    int size;
+    private int capacity = INITIAL_CAPACITY;
+    final JfrLongColumn eventTimes = new JfrLongColumn(INITIAL_CAPACITY);
+    final JfrIntColumn threadIds = new JfrIntColumn(INITIAL_CAPACITY);
+    final JfrIntColumn filenameIds = new JfrIntColumn(INITIAL_CAPACITY);
+    final JfrLongColumn correlationIds = new JfrLongColumn(INITIAL_CAPACITY);
+    final JfrIntColumn stackTraceIds = new JfrIntColumn(INITIAL_CAPACITY);
+    private JfrTimeIndex timeIndex;
+    private JfrSampleGroups threadGroups;
+    private JfrSampleGroups correlationIdGroups;
+    private long[] distinctCorrelationIds;
+    private final Map<AdditionalLevel, JfrTimestampLabels> timestampLabels = new EnumMap<>(AdditionalLevel.class);
+
+    JfrSamples(JfrParsedFile jfrParsedFile) {
+        this.jfrParsedFile = jfrParsedFile;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getEventTimeNanos(int index) {
+        return eventTimes.get(index);
+    }
+
+    public long getEventTimeMillis(int index) {
+        return eventTimes.get(index) / 1_000_000;
+    }
+
+    public Instant getEventTime(int index) {
+        return Instant.ofEpochMilli(getEventTimeMillis(index));
+    }
+
+    public int getThreadId(int index) {
+        return threadIds.get(index);
+    }
+
+    public String getThreadName(int index) {
+        return jfrParsedFile.getThreadNames().get(threadIds.get(index));
+    }
+
+    public int getFilenameId(int index) {
+        return filenameIds.get(index);
+    }
+
+    public String getFilename(int index) {
+        return jfrParsedFile.getFilenames().get(filenameIds.get(index));
+    }
+
+    public long getCorrelationId(int index) {
+        return correlationIds.get(index);
+    }
+
+    public int getStackTraceId(int index) {
+        return stackTraceIds.get(index);
+    }
+
+    public JfrStackTrace getStackTrace(int index) {
+        return jfrParsedFile.getStackTraceTable().get(stackTraceIds.get(index));
+    }
+
+    /**
+     * Indices of samples with event time between the given epoch milliseconds, both inclusive, in ascending order. The
+     * index of samples sorted by time is built on the first call.
+     */
+    public int[] findSamplesBetween(long fromMillis, long toMillis) {
+        return getTimeIndex().findSamplesBetween(fromMillis, toMillis);
+    }
+
+    /**
+     * Indices of samples of the given thread ids. Samples grouped by thread are built on the first call, so the cost
+     * of a call depends on the number of samples found.
+     */
+    public BitSet findSamplesOfThreads(BitSet threadIds) {
+        JfrSampleGroups groups = getThreadGroups();
+        BitSet found = new BitSet(size);
+        for (int threadId = threadIds.nextSetBit(0); threadId >= 0 && threadId < groups.keys(); threadId = threadIds.nextSetBit(threadId + 1)) {
+            groups.addTo(threadId, found);
+        }
+        return found;
+    }
+
+    /**
+     * Indices of samples of the given correlation id, samples grouped by correlation id are built on the first call.
+     */
+    public BitSet findSamplesOfCorrelationId(long correlationId) {
+        JfrSampleGroups groups;
+        long[] correlationIdKeys;
+        synchronized (this) {
+            groups = getCorrelationIdGroups();
+            correlationIdKeys = distinctCorrelationIds;
+        }
+        BitSet found = new BitSet(size);
+        int key = Arrays.binarySearch(correlationIdKeys, correlationId);
+        if (key >= 0) {
+            groups.addTo(key, found);
+        }
+        return found;
+    }
+
+    private synchronized JfrTimeIndex getTimeIndex() {
+        if (timeIndex == null || timeIndex.size() != size) {
+            timeIndex = JfrTimeIndex.build(this);
+        }
+        return timeIndex;
+    }
+
+    private synchronized JfrTimeIndex getBuiltTimeIndex() {
+        return timeIndex != null && timeIndex.size() == size ? timeIndex : null;
+    }
+
+    /**
+     * Derives the time index of samples made of all parent samples followed by new ones from the index of the parent,
+     * if the parent has built it.
+     */
+    void appendTimeIndex(JfrSamples<?> parent) {
+        JfrTimeIndex parentIndex = parent.getBuiltTimeIndex();
+        if (parentIndex != null) {
+            JfrTimeIndex appendedIndex = parentIndex.append(this);
+            synchronized (this) {
+                timeIndex = appendedIndex;
+            }
+        }
+    }
+
+    /**
+     * Derives the time index of samples made of parent samples matching the predicate from the index of the parent,
+     * if the parent has built it.
+     */
+    void retainTimeIndex(JfrSamples<?> parent, IntPredicate retained) {
+        JfrTimeIndex parentIndex = parent.getBuiltTimeIndex();
+        if (parentIndex != null) {
+            JfrTimeIndex retainedIndex = parentIndex.retain(this, retained);
+            synchronized (this) {
+                timeIndex = retainedIndex;
+            }
+        }
+    }
+
+    private synchronized JfrSampleGroups getThreadGroups() {
+        if (threadGroups == null || threadGroups.size() != size) {
+            int threads = 0;
+            for (int i = 0; i < size; i++) {
+                threads = Math.max(threads, threadIds.get(i) + 1);
+            }
+            threadGroups = JfrSampleGroups.build(size, threads, threadIds::get);
+        }
+        return threadGroups;
+    }
+
+    private synchronized JfrSampleGroups getCorrelationIdGroups() {
+        if (correlationIdGroups == null || correlationIdGroups.size() != size) {
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = correlationIds.get(i);
+            }
+            Arrays.parallelSort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            long[] correlationIdKeys = Arrays.copyOf(sorted, distinct);
+            correlationIdGroups = JfrSampleGroups.build(size, distinct, index -> Arrays.binarySearch(correlationIdKeys, correlationIds.get(index)));
+            distinctCorrelationIds = correlationIdKeys;
+        }
+        return correlationIdGroups;
+    }
+
+    public String getLeafFrame(int index) {
+        return null;
+    }
+
+    /**
+     * Renders additional levels of samples, timestamp levels are resolved once here, so the returned function is
+     * meant for a single aggregation.
+     */
+    IntFunction<String> getPrefixes(Set<AdditionalLevel> additionalLevels) {
+        if (additionalLevels.isEmpty()) {
+            return ignored -> null;
+        }
+        JfrTimestampLabels[] timestamps = getTimestampLabels(additionalLevels);
+        if (timestamps.length == 1 && additionalLevels.size() == 1) {
+            JfrTimestampLabels labels = timestamps[0];
+            return index -> labels.get(getEventTimeMillis(index));
+        }
+        return index -> {
+            StringBuilder builder = new StringBuilder();
+            addCommonStackTraceElements(index, builder, additionalLevels, timestamps);
+            return builder.length() == 0 ? null : builder.toString();
+        };
+    }
+
+    void addCommonStackTraceElements(int index, StringBuilder builder, Set<AdditionalLevel> additionalLevels, JfrTimestampLabels[] timestamps) {
+        if (additionalLevels.contains(ECID)) {
+            builder.append(getCorrelationId(index)).append(';');
+        }
+        for (JfrTimestampLabels labels : timestamps) {
+            builder.append(labels.get(getEventTimeMillis(index)));
+        }
+        if (additionalLevels.contains(FILENAME)) {
+            builder.append(getFilename(index)).append("_[i];");
+        }
+        if (additionalLevels.contains(THREAD)) {
+            builder.append(getThreadName(index)).append(';');
+        }
+    }
+
+    private synchronized JfrTimestampLabels[] getTimestampLabels(Set<AdditionalLevel> additionalLevels) {
+        List<JfrTimestampLabels> labels = new ArrayList<>(3);
+        if (additionalLevels.contains(TIMESTAMP_100_MS)) {
+            labels.add(getTimestampLabels(TIMESTAMP_100_MS, 100));
+        }
+        if (additionalLevels.contains(TIMESTAMP_1_S)) {
+            labels.add(getTimestampLabels(TIMESTAMP_1_S, 1000));
+        }
+        if (additionalLevels.contains(TIMESTAMP_10_S)) {
+            labels.add(getTimestampLabels(TIMESTAMP_10_S, 10000));
+        }
+        return labels.toArray(JfrTimestampLabels[]::new);
+    }
+
+    private JfrTimestampLabels getTimestampLabels(AdditionalLevel level, long resolutionMillis) {
+        JfrTimestampLabels labels = timestampLabels.get(level);
+        if (labels == null || labels.getSamplesSize() != size) {
+            labels = JfrTimestampLabels.build(this, resolutionMillis);
+            timestampLabels.put(level, labels);
+        }
+        return labels;
+    }
+
+    int addCommon(long eventTime, int threadId, int filenameId, long correlationId, int stackTraceId) {
+        ensureCapacity(size + 1);
+        int index = size++;
+        eventTimes.set(index, eventTime);
+        threadIds.set(index, threadId);
+        filenameIds.set(index, filenameId);
+        correlationIds.set(index, correlationId);
+        stackTraceIds.set(index, stackTraceId);
+        return index;
+    }
+
+    int addCommon(S source, int sourceIndex, int stackTraceId) {
+        return addCommon(source.eventTimes.get(sourceIndex), source.threadIds.get(sourceIndex), source.filenameIds.get(sourceIndex),
+                source.correlationIds.get(sourceIndex), stackTraceId);
+    }
+
+    int addAllCommon(S source) {
+        int offset = size;
+        ensureCapacity(size + source.size);
+        eventTimes.copyFrom(source.eventTimes, 0, offset, source.size);
+        threadIds.copyFrom(source.threadIds, 0, offset, source.size);
+        filenameIds.copyFrom(source.filenameIds, 0, offset, source.size);
+        correlationIds.copyFrom(source.correlationIds, 0, offset, source.size);
+        stackTraceIds.copyFrom(source.stackTraceIds, 0, offset, source.size);
+        size += source.size;
+        return offset;
+    }
+
+    void addUsedIds(BitSet stackTraceIds, BitSet threadIds, BitSet classIds) {
+        for (int i = 0; i < size; i++) {
+            stackTraceIds.set(this.stackTraceIds.get(i));
+            threadIds.set(this.threadIds.get(i));
+        }
+    }
+
+    void remapIds(int[] stackTraceIds, int[] threadIds, int[] classIds) {
+        for (int i = 0; i < size; i++) {
+            this.stackTraceIds.set(i, stackTraceIds[this.stackTraceIds.get(i)]);
+            this.threadIds.set(i, threadIds[this.threadIds.get(i)]);
+        }
+    }
+
+    void remapFilenameIds(int[] filenameIds) {
+        for (int i = 0; i < size; i++) {
+            this.filenameIds.set(i, filenameIds[this.filenameIds.get(i)]);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.capacity) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, this.capacity * 2);
+        for (JfrColumn column : getColumns()) {
+            column.ensureCapacity(newCapacity);
+        }
+        this.capacity = newCapacity;
+    }
+
+    /**
+     * Moves all columns to a single memory-mapped file in the given directory. The file is deleted as soon as it is
+     * mapped, the mappings stay valid until the samples are garbage collected. Samples added afterwards bring the
+     * columns back to the heap. A column bigger than a single mapping can hold stays on the heap.
+     */
+    synchronized void mapColumns(Path directory) throws IOException {
+        Path file = Files.createTempFile(directory, "jfr-samples-", ".bin");
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE)) {
+            long position = 0;
+            for (JfrColumn column : getColumns()) {
+                if (column.mappedBytes(size) > Integer.MAX_VALUE) {
+                    log.warn("Column of {} samples takes {} bytes, more than a memory mapping can hold, keeping it on the heap", size, column.mappedBytes(size));
+                    continue;
+                }
+                position = column.map(channel, position, size);
+            }
+        }
+        capacity = size;
+    }
+
+    synchronized void writeColumns(DataOutput output) throws IOException {
+        output.writeInt(size);
+        for (JfrColumn column : getColumns()) {
+            column.write(output, size);
+        }
+    }
+
+    /**
+     * Reads columns written by {@link #writeColumns(DataOutput)}, the number of samples written before them is read
+     * by the caller.
+     */
+    void readColumns(DataInput input, int size) throws IOException {
+        ensureCapacity(size);
+        for (JfrColumn column : getColumns()) {
+            column.read(input, size);
+        }
+        this.size = size;
+    }
+
+    private List<JfrColumn> getColumns() {
+        List<JfrColumn> columns = new ArrayList<>(List.of(eventTimes, threadIds, filenameIds, correlationIds, stackTraceIds));
+        columns.addAll(getTypeColumns());
+        return columns;
+    }
+
+    abstract List<JfrColumn> getTypeColumns();
+
+    abstract S newSamples(JfrParsedFile jfrParsedFile);
+
+    abstract void add(S source, int sourceIndex, int stackTraceId);
+
+    abstract void addAll(S source);
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class JfrStackTrace {
+    private static final String[] FRAME_SUFFIX = {"_[0]", "_[j]", "_[i]", "_[k]", "_[1]"};
+
+    @Getter
+    private final int id;
+    @Getter(AccessLevel.PACKAGE)
+    private final int[] frameIds;
+    @Getter(AccessLevel.PACKAGE)
+    private final int[] lineNumbers;
+    private final JfrStringDictionary frameDictionary;
+
+    public int getDepth() {
+        return frameIds.length;
+    }
+
+    public int getFrameId(int index) {
+        return frameIds[index];
+    }
+
+    public String getFrame(int index) {
+        return frameDictionary.get(frameIds[index]);
+    }
+
+    public int getLineNumber(int index) {
+        return lineNumbers[index];
+    }
+
+    public String[] getFrames() {
+        String[] frames = new String[frameIds.length];
+        for (int i = 0; i < frameIds.length; i++) {
+            frames[i] = getFrame(i);
+        }
+        return frames;
+    }
+
+    public int indexOf(int frameId) {
+        for (int i = 0; i < frameIds.length; i++) {
+            if (frameIds[i] == frameId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getFrame(int index, boolean withLineNumber) {
+        String frame = getFrame(index);
+        int lineNumber = lineNumbers[index];
+        if (!withLineNumber || lineNumber < 0) {
+            return frame;
+        }
+        String frameSuffix = findFrameSuffix(frame);
+        if (frameSuffix == null) {
+            return frame + ':' + lineNumber;
+        }
+        return frame.substring(0, frame.length() - frameSuffix.length()) + ':' + lineNumber + frameSuffix;
+    }
+
+    public String asCollapsed(boolean withLineNumbers) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < frameIds.length; i++) {
+            if (i > 0) {
+                builder.append(';');
+            }
+            builder.append(getFrame(i, withLineNumbers));
+        }
+        return builder.toString();
+    }
+
+    private static String findFrameSuffix(String frame) {
+        for (String frameSuffix : FRAME_SUFFIX) {
+            if (frame.endsWith(frameSuffix)) {
+                return frameSuffix;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import org.openjdk.jmc.common.IMCStackTrace;
+
+@RequiredArgsConstructor
+class JfrStackTraceCache {
+    private final Map<StackTraceIdentity, JfrStackTrace> stackTraces = new ConcurrentHashMap<>();
+    private final Function<IMCStackTrace, JfrStackTrace> converter;
+
+    JfrStackTrace get(IMCStackTrace stackTrace) {
+        StackTraceIdentity key = new StackTraceIdentity(stackTrace);
+        JfrStackTrace converted = stackTraces.get(key);
+        if (converted == null) {
+            // converting twice is harmless, JfrStackTraceTable returns the same instance for the same content
+            converted = converter.apply(stackTrace);
+            stackTraces.putIfAbsent(key, converted);
+        }
+        return converted;
+    }
+
+    int size() {
+        return stackTraces.size();
+    }
+
+    private record StackTraceIdentity(IMCStackTrace stackTrace) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StackTraceIdentity other && other.stackTrace == stackTrace;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(stackTrace);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+public class JfrStackTraceTable {
+    @Getter
+    private final JfrStringDictionary frameDictionary;
+    private final Map<StackTraceKey, JfrStackTrace> stackTraces = new ConcurrentHashMap<>();
+    private volatile JfrStackTrace[] stackTracesById = new JfrStackTrace[1024];
+    private int size;
+    // inverted index, ids of stack traces containing a frame in ascending order, extended on lookup
+    private int[][] stackTraceIdsByFrame = new int[0][];
+    private int[] stackTraceIdsByFrameSizes = new int[0];
+    private int indexedSize;
+
+    JfrStackTrace getOrAdd(int[] frameIds, int[] lineNumbers) {
+        StackTraceKey key = new StackTraceKey(frameIds, lineNumbers);
+        JfrStackTrace stackTrace = stackTraces.get(key);
+        if (stackTrace != null) {
+            return stackTrace;
+        }
+        synchronized (this) {
+            stackTrace = stackTraces.get(key);
+            if (stackTrace != null) {
+                return stackTrace;
+            }
+            stackTrace = new JfrStackTrace(size, frameIds, lineNumbers, frameDictionary);
+            JfrStackTrace[] current = stackTracesById;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size++] = stackTrace;
+            stackTracesById = current;
+            stackTraces.put(key, stackTrace);
+            return stackTrace;
+        }
+    }
+
+    JfrStackTrace getSubStackTrace(JfrStackTrace stackTrace, int from, int to) {
+        if (from == 0 && to == stackTrace.getDepth()) {
+            return stackTrace;
+        }
+        return getOrAdd(
+                Arrays.copyOfRange(stackTrace.getFrameIds(), from, to),
+                Arrays.copyOfRange(stackTrace.getLineNumbers(), from, to)
+        );
+    }
+
+    public JfrStackTrace get(int id) {
+        return stackTracesById[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Ids of stack traces with any frame matching the predicate. The predicate is tested once per distinct frame,
+     * stack traces of matching frames come from the frame to stack traces index.
+     */
+    public BitSet findStackTraces(Predicate<String> framePredicate) {
+        BitSet frameIds = frameDictionary.find(framePredicate);
+        synchronized (this) {
+            updateFrameIndex();
+            BitSet found = new BitSet(size);
+            for (int frameId = frameIds.nextSetBit(0); frameId >= 0 && frameId < stackTraceIdsByFrame.length; frameId = frameIds.nextSetBit(frameId + 1)) {
+                int[] stackTraceIds = stackTraceIdsByFrame[frameId];
+                for (int i = 0; i < stackTraceIdsByFrameSizes[frameId]; i++) {
+                    found.set(stackTraceIds[i]);
+                }
+            }
+            return found;
+        }
+    }
+
+    private void updateFrameIndex() {
+        for (; indexedSize < size; indexedSize++) {
+            int[] frameIds = stackTracesById[indexedSize].getFrameIds();
+            for (int frameId : frameIds) {
+                addToFrameIndex(frameId, indexedSize);
+            }
+        }
+    }
+
+    private void addToFrameIndex(int frameId, int stackTraceId) {
+        if (frameId >= stackTraceIdsByFrame.length) {
+            int length = Math.max(frameId + 1, stackTraceIdsByFrame.length * 2);
+            stackTraceIdsByFrame = Arrays.copyOf(stackTraceIdsByFrame, length);
+            stackTraceIdsByFrameSizes = Arrays.copyOf(stackTraceIdsByFrameSizes, length);
+        }
+        int[] stackTraceIds = stackTraceIdsByFrame[frameId];
+        int count = stackTraceIdsByFrameSizes[frameId];
+        if (count > 0 && stackTraceIds[count - 1] == stackTraceId) {
+            // recursive frame, the stack trace is already there
+            return;
+        }
+        if (stackTraceIds == null) {
+            stackTraceIds = new int[4];
+        } else if (count == stackTraceIds.length) {
+            stackTraceIds = Arrays.copyOf(stackTraceIds, count * 2);
+        }
+        stackTraceIds[count] = stackTraceId;
+        stackTraceIdsByFrame[frameId] = stackTraceIds;
+        stackTraceIdsByFrameSizes[frameId] = count + 1;
+    }
+
+    private static final class StackTraceKey {
+        private final int[] frameIds;
+        private final int[] lineNumbers;
+        private final int hash;
+
+        private StackTraceKey(int[] frameIds, int[] lineNumbers) {
+            this.frameIds = frameIds;
+            this.lineNumbers = lineNumbers;
+            this.hash = 31 * Arrays.hashCode(frameIds) + Arrays.hashCode(lineNumbers);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StackTraceKey other)) {
+                return false;
+            }
+            return hash == other.hash && Arrays.equals(frameIds, other.frameIds) && Arrays.equals(lineNumbers, other.lineNumbers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
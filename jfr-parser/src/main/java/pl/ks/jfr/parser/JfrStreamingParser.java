@@ -0,0 +1,256 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import static pl.ks.jfr.parser.JfrRecordedEvents.getEcid;
+import static pl.ks.jfr.parser.JfrRecordedEvents.getStartTime;
+import static pl.ks.jfr.parser.JfrRecordedEvents.getString;
+import static pl.ks.jfr.parser.JfrRecordedEvents.getThread;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedObject;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Converts a recording read event by event with {@link jdk.jfr.consumer.RecordingFile}, only the constant pools of
+ * the current chunk are kept in memory instead of the whole JMC model of the recording. Every chunk is converted by
+ * its own instance, so chunks of one file can be decoded in parallel.
+ */
+@Slf4j
+class JfrStreamingParser implements Consumer<RecordedEvent> {
+    private final JfrParsedFile jfrParsedFile;
+    private final int filenameId;
+    private final String filename;
+    private final JfrExecutionSamples executionSamples;
+    private final JfrExecutionSamples wallClockSamples;
+    private final JfrAllocationSamples allocationSamples;
+    private final JfrLockSamples lockSamples;
+    private final List<JfrParsedCpuUsageEvent> cpuUsageEvents = new ArrayList<>();
+
+    // constant pool objects are shared by all events of a chunk, weak keys let them go with the chunk
+    private final Map<RecordedStackTrace, JfrStackTrace> stackTraces = new WeakHashMap<>();
+    private final Map<RecordedThread, Integer> threadIds = new WeakHashMap<>();
+    private final Map<RecordedClass, Integer> classIds = new WeakHashMap<>();
+    private int convertedStackTraces;
+
+    private JfrStreamingParser(JfrParsedFile jfrParsedFile, String filename) {
+        this.jfrParsedFile = jfrParsedFile;
+        this.filenameId = jfrParsedFile.getFilenameId(filename);
+        this.filename = filename;
+        this.executionSamples = new JfrExecutionSamples(jfrParsedFile);
+        this.wallClockSamples = new JfrExecutionSamples(jfrParsedFile);
+        this.allocationSamples = new JfrAllocationSamples(jfrParsedFile);
+        this.lockSamples = new JfrLockSamples(jfrParsedFile);
+    }
+
+    static void parse(JfrParsedFile jfrParsedFile, String filename, Path file, int chunkParsingParallelism,
+                      JfrExecutionSamples wallClockSamplesToProcess) throws IOException {
+        List<JfrStreamingParser> chunks = ParserUtil.readRecordingChunks(file, chunkParsingParallelism, () -> new JfrStreamingParser(jfrParsedFile, filename));
+        int convertedStackTraces = 0;
+        for (JfrStreamingParser chunk : chunks) {
+            chunk.addTo(wallClockSamplesToProcess);
+            convertedStackTraces += chunk.convertedStackTraces;
+        }
+        log.info("Converted {} distinct stack traces from {} in {} parts", convertedStackTraces, filename, chunks.size());
+    }
+
+    private void addTo(JfrExecutionSamples wallClockSamplesToProcess) {
+        jfrParsedFile.addExecutionSamples(executionSamples);
+        jfrParsedFile.addAllocationSamples(allocationSamples);
+        jfrParsedFile.addLockSamples(lockSamples);
+        jfrParsedFile.addCpuUsageEvents(cpuUsageEvents);
+        if (jfrParsedFile.isWallClockExactTime()) {
+            wallClockSamplesToProcess.addAll(wallClockSamples);
+        } else {
+            jfrParsedFile.addWallClockSamples(wallClockSamples);
+        }
+    }
+
+    @Override
+    public void accept(RecordedEvent event) {
+        switch (event.getEventType().getName()) {
+            case JfrRecordedEvents.EXECUTION_SAMPLE -> processExecutionSample(event, executionSamples, false);
+            case JfrRecordedEvents.WALL_CLOCK_SAMPLE -> processExecutionSample(event, wallClockSamples, true);
+            case JfrRecordedEvents.MONITOR_ENTER -> processLockEvent(event);
+            case JfrRecordedEvents.ALLOCATION_IN_NEW_TLAB -> processAllocEvent(event, false);
+            case JfrRecordedEvents.ALLOCATION_OUTSIDE_TLAB -> processAllocEvent(event, true);
+            case JfrRecordedEvents.CPU_LOAD -> processCpuEvent(event);
+        }
+    }
+
+    private void processExecutionSample(RecordedEvent event, JfrExecutionSamples samples, boolean wallClock) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return;
+        }
+        long sampleCount = 1;
+        if (wallClock) {
+            sampleCount = event.hasField("samples") ? event.getLong("samples") : 0L;
+        }
+        samples.add(
+                getStartTime(event),
+                getThreadId(getThread(event)),
+                filenameId,
+                getEcid(event),
+                getStackTraceId(stackTrace),
+                JfrParserHelper.isConsumingCpu(getString(event, "state")),
+                sampleCount
+        );
+    }
+
+    private void processLockEvent(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return;
+        }
+        lockSamples.add(
+                getStartTime(event),
+                getThreadId(event.getThread()),
+                filenameId,
+                getEcid(event),
+                getStackTraceId(stackTrace),
+                getClassId(event.getClass("monitorClass")),
+                event.getDuration().toNanos()
+        );
+    }
+
+    private void processAllocEvent(RecordedEvent event, boolean outsideTLAB) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return;
+        }
+        allocationSamples.add(
+                getStartTime(event),
+                getThreadId(event.getThread()),
+                filenameId,
+                getEcid(event),
+                getStackTraceId(stackTrace),
+                getClassId(event.getClass("objectClass")),
+                event.getLong("allocationSize"),
+                outsideTLAB
+        );
+    }
+
+    private void processCpuEvent(RecordedEvent event) {
+        cpuUsageEvents.add(JfrParsedCpuUsageEvent.builder()
+                .eventTime(Instant.ofEpochMilli(getStartTime(event) / 1000000))
+                .filename(filename)
+                .machineTotal(BigDecimal.valueOf(event.getDouble("machineTotal")).setScale(2, RoundingMode.HALF_EVEN))
+                .jvmUser(BigDecimal.valueOf(event.getDouble("jvmUser")).setScale(2, RoundingMode.HALF_EVEN))
+                .jvmSystem(BigDecimal.valueOf(event.getDouble("jvmSystem")).setScale(2, RoundingMode.HALF_EVEN))
+                .build());
+    }
+
+    private int getThreadId(RecordedThread thread) {
+        return threadIds.computeIfAbsent(thread, ignored -> jfrParsedFile.getThreadId(JfrRecordedEvents.getThreadName(thread)));
+    }
+
+    private int getClassId(RecordedClass recordedClass) {
+        return classIds.computeIfAbsent(recordedClass, ignored -> jfrParsedFile.getClassId(getClassName(recordedClass)));
+    }
+
+    private int getStackTraceId(RecordedStackTrace stackTrace) {
+        JfrStackTrace converted = stackTraces.get(stackTrace);
+        if (converted == null) {
+            converted = getStackTrace(stackTrace.getFrames());
+            stackTraces.put(stackTrace, converted);
+            convertedStackTraces++;
+        }
+        return converted.getId();
+    }
+
+    private JfrStackTrace getStackTrace(List<RecordedFrame> frames) {
+        int[] frameIds = new int[frames.size()];
+        int[] lineNumbers = new int[frames.size()];
+        for (int i = 0; i < frames.size(); i++) {
+            RecordedFrame frame = frames.get(i);
+            lineNumbers[frames.size() - i - 1] = frame.getLineNumber();
+
+            RecordedMethod method = frame.getMethod();
+            RecordedClass type = method.getType();
+            String packageName = getPackageName(type);
+            String frameName = JfrParserImpl.getFrameName(jfrParsedFile, packageName, getTypeName(type, packageName),
+                    method.getName(), method.getDescriptor(), JfrParserImpl.getType(getString(frame, "type")));
+            frameIds[frames.size() - i - 1] = jfrParsedFile.getFrameId(frameName);
+        }
+        return jfrParsedFile.getStackTraceTable().getOrAdd(frameIds, lineNumbers);
+    }
+
+    static String getClassName(RecordedClass recordedClass) {
+        if (recordedClass == null) {
+            return "null";
+        }
+        String name = recordedClass.getName();
+        if (name.isEmpty() || name.charAt(0) != '[') {
+            return name;
+        }
+        // JMC names arrays like java.lang.String[][], the JDK parser keeps the descriptor [[Ljava.lang.String;
+        int dimensions = 0;
+        while (name.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        StringBuilder builder = new StringBuilder(switch (name.charAt(dimensions)) {
+            case 'B' -> "byte";
+            case 'C' -> "char";
+            case 'D' -> "double";
+            case 'F' -> "float";
+            case 'I' -> "int";
+            case 'J' -> "long";
+            case 'S' -> "short";
+            case 'Z' -> "boolean";
+            default -> name.substring(dimensions + 1, name.length() - 1);
+        });
+        for (int i = 0; i < dimensions; i++) {
+            builder.append("[]");
+        }
+        return builder.toString();
+    }
+
+    static String getPackageName(RecordedClass recordedClass) {
+        if (recordedClass == null || !recordedClass.hasField("package")) {
+            return null;
+        }
+        RecordedObject recordedPackage = recordedClass.getValue("package");
+        return getString(recordedPackage, "name");
+    }
+
+    static String getTypeName(RecordedClass recordedClass, String packageName) {
+        if (recordedClass == null) {
+            return "";
+        }
+        String className = recordedClass.getName();
+        if (packageName != null && !packageName.isEmpty() && className.length() > packageName.length()
+                && className.startsWith(JfrParserHelper.replaceCharacter(packageName, '/', '.'))) {
+            return className.substring(packageName.length() + 1);
+        }
+        return className;
+    }
+}
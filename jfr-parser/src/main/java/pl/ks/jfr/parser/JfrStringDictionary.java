@@ -0,0 +1,74 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+public class JfrStringDictionary {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] strings = new String[1024];
+    private int size;
+
+    int getOrAdd(String string) {
+        Integer id = ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(string);
+            if (id != null) {
+                return id;
+            }
+            String[] current = strings;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = string;
+            strings = current;
+            ids.put(string, size);
+            return size++;
+        }
+    }
+
+    public int getId(String string) {
+        Integer id = ids.get(string);
+        return id == null ? -1 : id;
+    }
+
+    public String get(int id) {
+        return strings[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public BitSet find(Predicate<String> predicate) {
+        int size = size();
+        String[] current = strings;
+        BitSet found = new BitSet(size);
+        for (int id = 0; id < size; id++) {
+            if (predicate.test(current[id])) {
+                found.set(id);
+            }
+        }
+        return found;
+    }
+}
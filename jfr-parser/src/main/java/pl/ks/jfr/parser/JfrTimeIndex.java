@@ -0,0 +1,167 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Indices of samples sorted by the second of their event time, indices of the same second stay in ascending order.
+ * A time range query visits only samples of the seconds it overlaps, or scans all samples in order when those seconds
+ * hold more than a quarter of them. Files made by appending or evicting samples derive their index from the index of
+ * the parent instead of sorting all samples again.
+ */
+final class JfrTimeIndex {
+    private static final int MAX_SORTED_FRACTION = 4;
+
+    private final JfrSamples<?> samples;
+    private final int[] sortedIndices;
+
+    private JfrTimeIndex(JfrSamples<?> samples, int[] sortedIndices) {
+        this.samples = samples;
+        this.sortedIndices = sortedIndices;
+    }
+
+    static JfrTimeIndex build(JfrSamples<?> samples) {
+        return new JfrTimeIndex(samples, sort(samples, 0, samples.size()));
+    }
+
+    /**
+     * Index of samples made of the samples of this index followed by new ones. Only the new samples are sorted, then
+     * merged with this index, or just put after it when none of them is older than the samples of this index.
+     */
+    JfrTimeIndex append(JfrSamples<?> samples) {
+        int offset = sortedIndices.length;
+        int[] added = sort(samples, offset, samples.size());
+        int[] merged = Arrays.copyOf(sortedIndices, offset + added.length);
+        if (offset == 0 || added.length == 0 || getSecond(samples, sortedIndices[offset - 1]) <= getSecond(samples, added[0])) {
+            System.arraycopy(added, 0, merged, offset, added.length);
+            return new JfrTimeIndex(samples, merged);
+        }
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < offset && j < added.length) {
+            // samples of this index go first within a second, their indices are lower
+            if (getSecond(samples, added[j]) < getSecond(samples, sortedIndices[i])) {
+                merged[k++] = added[j++];
+            } else {
+                merged[k++] = sortedIndices[i++];
+            }
+        }
+        System.arraycopy(sortedIndices, i, merged, k, offset - i);
+        System.arraycopy(added, j, merged, k + offset - i, added.length - j);
+        return new JfrTimeIndex(samples, merged);
+    }
+
+    /**
+     * Index of samples made of the samples of this index that match the predicate, in their order. Retained samples
+     * keep their order in the index, only their indices shift down over the dropped ones.
+     */
+    JfrTimeIndex retain(JfrSamples<?> samples, IntPredicate retained) {
+        int[] newIndices = new int[sortedIndices.length];
+        int size = 0;
+        for (int index = 0; index < newIndices.length; index++) {
+            newIndices[index] = retained.test(index) ? size++ : -1;
+        }
+        int[] retainedIndices = new int[size];
+        int count = 0;
+        for (int index : sortedIndices) {
+            if (newIndices[index] >= 0) {
+                retainedIndices[count++] = newIndices[index];
+            }
+        }
+        return new JfrTimeIndex(samples, retainedIndices);
+    }
+
+    private static int[] sort(JfrSamples<?> samples, int from, int to) {
+        long minSecond = Long.MAX_VALUE;
+        for (int i = from; i < to; i++) {
+            minSecond = Math.min(minSecond, getSecond(samples, i));
+        }
+        // second relative to the first one in the upper half, sample index in the lower half, sorted as primitives
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            keys[i - from] = ((getSecond(samples, i) - minSecond) << 32) | i;
+        }
+        Arrays.parallelSort(keys);
+        int[] sortedIndices = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sortedIndices[i] = (int) keys[i];
+        }
+        return sortedIndices;
+    }
+
+    int size() {
+        return sortedIndices.length;
+    }
+
+    int[] findSamplesBetween(long fromMillis, long toMillis) {
+        if (fromMillis > toMillis) {
+            return new int[0];
+        }
+        int from = findFirstPosition(Math.floorDiv(fromMillis, 1000));
+        int to = findFirstPosition(Math.floorDiv(toMillis, 1000) + 1);
+        if ((long) (to - from) * MAX_SORTED_FRACTION > sortedIndices.length) {
+            // sorting most of the samples back into order costs more than a scan that visits them in order
+            return scan(fromMillis, toMillis, to - from);
+        }
+        int[] found = new int[to - from];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int index = sortedIndices[i];
+            long eventTime = samples.getEventTimeMillis(index);
+            if (eventTime >= fromMillis && eventTime <= toMillis) {
+                found[count++] = index;
+            }
+        }
+        if (count < found.length) {
+            found = Arrays.copyOf(found, count);
+        }
+        Arrays.sort(found);
+        return found;
+    }
+
+    private int[] scan(long fromMillis, long toMillis, int maxCount) {
+        int[] found = new int[maxCount];
+        int count = 0;
+        for (int index = 0; index < sortedIndices.length; index++) {
+            long eventTime = samples.getEventTimeMillis(index);
+            if (eventTime >= fromMillis && eventTime <= toMillis) {
+                found[count++] = index;
+            }
+        }
+        return count < found.length ? Arrays.copyOf(found, count) : found;
+    }
+
+    private int findFirstPosition(long second) {
+        int low = 0;
+        int high = sortedIndices.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getSecond(samples, sortedIndices[mid]) < second) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long getSecond(JfrSamples<?> samples, int index) {
+        return Math.floorDiv(samples.getEventTimeMillis(index), 1000);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.jfr.parser;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Timestamp additional levels of samples, rendered once per time bucket. Labels of buckets within the time range of
+ * the samples are kept in an array filled on demand, a bucket outside of it is rendered on every call.
+ */
+final class JfrTimestampLabels {
+    private static final ThreadLocal<SimpleDateFormat> OUTPUT_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US));
+    private static final ThreadLocal<DateTimeFormatter> OUTPUT_FORMAT_DTF = ThreadLocal.withInitial(() -> DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US));
+    private static final ThreadLocal<DecimalFormat> TIME_STAMP_FORMAT = ThreadLocal.withInitial(() -> new DecimalFormat("0000000000000"));
+    private static final ZoneId SYSTEM_DEFAULT_ZONE_ID = ZoneId.systemDefault();
+    private static final ZoneId UTC_ZONE_ID = ZoneId.of("UTC");
+    private static final int MAX_CACHED_BUCKETS = 1 << 22;
+
+    private final long resolutionMillis;
+    private final long firstBucket;
+    private final String[] labels;
+    private final int samplesSize;
+
+    private JfrTimestampLabels(long resolutionMillis, long firstBucket, int buckets, int samplesSize) {
+        this.resolutionMillis = resolutionMillis;
+        this.firstBucket = firstBucket;
+        this.labels = new String[buckets];
+        this.samplesSize = samplesSize;
+    }
+
+    static JfrTimestampLabels build(JfrSamples<?> samples, long resolutionMillis) {
+        int size = samples.size();
+        if (size == 0) {
+            return new JfrTimestampLabels(resolutionMillis, 0, 0, 0);
+        }
+        long minBucket = Long.MAX_VALUE;
+        long maxBucket = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            long bucket = samples.getEventTimeMillis(i) / resolutionMillis;
+            minBucket = Math.min(minBucket, bucket);
+            maxBucket = Math.max(maxBucket, bucket);
+        }
+        return new JfrTimestampLabels(resolutionMillis, minBucket, (int) Math.min(maxBucket - minBucket + 1, MAX_CACHED_BUCKETS), size);
+    }
+
+    int getSamplesSize() {
+        return samplesSize;
+    }
+
+    String get(long eventTimeMillis) {
+        long bucket = eventTimeMillis / resolutionMillis;
+        long slot = bucket - firstBucket;
+        if (slot < 0 || slot >= labels.length) {
+            return render(bucket);
+        }
+        // racing threads render the same label, any of them can be kept
+        String label = labels[(int) slot];
+        if (label == null) {
+            label = render(bucket);
+            labels[(int) slot] = label;
+        }
+        return label;
+    }
+
+    private String render(long bucket) {
+        Date date = new Date(bucket * resolutionMillis);
+        ZonedDateTime utc = OffsetDateTime.from(date.toInstant().atZone(SYSTEM_DEFAULT_ZONE_ID)).atZoneSameInstant(UTC_ZONE_ID);
+        String timestamp = TIME_STAMP_FORMAT.get().format(bucket);
+        return timestamp + '_' + OUTPUT_FORMAT_DTF.get().format(utc) + " UTC_[k];" +
+                timestamp + '_' + OUTPUT_FORMAT.get().format(date) + ' ' + SYSTEM_DEFAULT_ZONE_ID + "_[k];";
+    }
+}
@@ -4,16 +4,194 @@ import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
 import org.openjdk.jmc.flightrecorder.internal.EventArrays;
 import org.openjdk.jmc.flightrecorder.internal.FlightRecordingLoader;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.zip.GZIPInputStream;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 abstract class ParserUtil {
+    private static final int CHUNK_HEADER_SIZE = 16;
+    private static final int CHUNK_MAGIC = 0x464c5200;
+
     static EventArrays getFlightRecording(Path file) throws IOException, CouldNotLoadRecordingException {
-        if (file.getFileName().toString().toLowerCase().endsWith(".jfr.gz")) {
+        if (isGzipped(file)) {
             return FlightRecordingLoader.loadStream(new GZIPInputStream(Files.newInputStream(file)), false, false);
         }
         return FlightRecordingLoader.loadStream(Files.newInputStream(file), false, false);
     }
+
+    static void readRecording(Path file, Consumer<RecordedEvent> consumer) throws IOException {
+        if (!isGzipped(file)) {
+            readRecordingFile(file, consumer);
+            return;
+        }
+        // RecordingFile needs random access to the chunks, so a compressed recording is unpacked first
+        Path uncompressed = Files.createTempFile("jfr-parser-", ".jfr");
+        try {
+            try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(file))) {
+                Files.copy(inputStream, uncompressed, StandardCopyOption.REPLACE_EXISTING);
+            }
+            readRecordingFile(uncompressed, consumer);
+        } finally {
+            Files.deleteIfExists(uncompressed);
+        }
+    }
+
+    /**
+     * Reads every chunk of the recording with its own consumer, up to {@code parallelism} chunks at once. Chunks are
+     * self-contained, so each of them is copied to a separate temp file that {@link RecordingFile} can decode on its
+     * own. Consumers are returned in the order of their chunks.
+     */
+    static <T extends Consumer<RecordedEvent>> List<T> readRecordingChunks(Path file, int parallelism, Supplier<T> chunkConsumerSupplier) throws IOException {
+        if (parallelism <= 1 || (!isGzipped(file) && countChunks(file) <= 1)) {
+            T consumer = chunkConsumerSupplier.get();
+            readRecording(file, consumer);
+            return List.of(consumer);
+        }
+
+        Path directory = Files.createTempDirectory("jfr-parser-");
+        try {
+            List<Path> chunks = splitIntoChunks(file, directory);
+            int threads = Math.min(parallelism, chunks.size());
+            if (threads <= 1) {
+                T consumer = chunkConsumerSupplier.get();
+                for (Path chunk : chunks) {
+                    readRecordingFile(chunk, consumer);
+                }
+                return List.of(consumer);
+            }
+            return readChunksConcurrently(chunks, threads, chunkConsumerSupplier);
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path chunk : files.toList()) {
+                    Files.deleteIfExists(chunk);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static <T extends Consumer<RecordedEvent>> List<T> readChunksConcurrently(List<Path> chunks, int threads, Supplier<T> chunkConsumerSupplier) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<T>> futures = chunks.stream()
+                    .map(chunk -> executor.submit(() -> {
+                        T consumer = chunkConsumerSupplier.get();
+                        readRecordingFile(chunk, consumer);
+                        return consumer;
+                    }))
+                    .toList();
+            List<T> consumers = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                consumers.add(future.get());
+            }
+            return consumers;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int countChunks(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int chunks = 0;
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+            while (position < channel.size()) {
+                header.clear();
+                channel.read(header, position);
+                long chunkSize = header.position() == CHUNK_HEADER_SIZE && header.getInt(0) == CHUNK_MAGIC ? header.getLong(8) : 0;
+                chunks++;
+                if (chunkSize < CHUNK_HEADER_SIZE) {
+                    // chunk still being written, it takes the rest of the file
+                    break;
+                }
+                position += chunkSize;
+            }
+            return chunks;
+        }
+    }
+
+    private static List<Path> splitIntoChunks(Path file, Path directory) throws IOException {
+        List<Path> chunks = new ArrayList<>();
+        try (ReadableByteChannel input = isGzipped(file) ?
+                Channels.newChannel(new GZIPInputStream(Files.newInputStream(file))) :
+                FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+            while (readHeader(input, header)) {
+                if (header.getInt(0) != CHUNK_MAGIC) {
+                    throw new IOException("Not a JFR chunk at chunk " + chunks.size() + " of " + file);
+                }
+                long chunkSize = header.getLong(8);
+                long remaining = chunkSize < CHUNK_HEADER_SIZE ? Long.MAX_VALUE : chunkSize - CHUNK_HEADER_SIZE;
+
+                Path chunk = directory.resolve("chunk-" + chunks.size() + ".jfr");
+                try (FileChannel output = FileChannel.open(chunk, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    header.flip();
+                    output.write(header);
+                    long position = CHUNK_HEADER_SIZE;
+                    while (remaining > 0) {
+                        long transferred = output.transferFrom(input, position, remaining);
+                        if (transferred <= 0) {
+                            break;
+                        }
+                        position += transferred;
+                        remaining -= transferred;
+                    }
+                }
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    private static boolean readHeader(ReadableByteChannel input, ByteBuffer header) throws IOException {
+        header.clear();
+        while (header.hasRemaining()) {
+            if (input.read(header) < 0) {
+                if (header.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated JFR chunk header");
+            }
+        }
+        return true;
+    }
+
+    private static void readRecordingFile(Path file, Consumer<RecordedEvent> consumer) throws IOException {
+        try (RecordingFile recordingFile = new RecordingFile(file)) {
+            while (recordingFile.hasMoreEvents()) {
+                consumer.accept(recordingFile.readEvent());
+            }
+        }
+    }
+
+    private static boolean isGzipped(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".jfr.gz");
+    }
 }
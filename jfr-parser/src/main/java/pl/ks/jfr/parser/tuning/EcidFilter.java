@@ -15,12 +15,14 @@
  */
 package pl.ks.jfr.parser.tuning;
 
+import jdk.jfr.consumer.RecordedEvent;
 import lombok.Builder;
 import lombok.Value;
 import org.openjdk.jmc.common.item.IItem;
 import org.openjdk.jmc.common.item.IMemberAccessor;
 import org.openjdk.jmc.common.unit.IQuantity;
 import pl.ks.jfr.parser.JfrAccessors;
+import pl.ks.jfr.parser.JfrRecordedEvents;
 
 @Value
 @Builder
@@ -32,6 +34,11 @@ public class EcidFilter implements PreStackFilter {
         return shouldInclude(accessors.getEcidAccessor(), event);
     }
 
+    @Override
+    public boolean shouldInclude(RecordedEvent event) {
+        return JfrRecordedEvents.hasEcid(event) && JfrRecordedEvents.getEcid(event) == ecid;
+    }
+
     private boolean shouldInclude(IMemberAccessor<IQuantity, IItem> ecidAccessor, IItem event) {
         if (ecidAccessor == null) {
             return false;
@@ -15,9 +15,12 @@
  */
 package pl.ks.jfr.parser.tuning;
 
+import jdk.jfr.consumer.RecordedEvent;
 import org.openjdk.jmc.common.item.IItem;
 import pl.ks.jfr.parser.JfrAccessors;
 
 public interface PreStackFilter {
     boolean shouldInclude(JfrAccessors accessors, IItem event);
+
+    boolean shouldInclude(RecordedEvent event);
 }
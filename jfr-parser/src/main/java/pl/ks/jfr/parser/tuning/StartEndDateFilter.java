@@ -16,12 +16,14 @@
 package pl.ks.jfr.parser.tuning;
 
 import java.time.Instant;
+import jdk.jfr.consumer.RecordedEvent;
 import lombok.Builder;
 import lombok.Value;
 import org.openjdk.jmc.common.item.IItem;
 import org.openjdk.jmc.common.item.IMemberAccessor;
 import org.openjdk.jmc.common.unit.IQuantity;
 import pl.ks.jfr.parser.JfrAccessors;
+import pl.ks.jfr.parser.JfrRecordedEvents;
 
 @Value
 @Builder
@@ -34,6 +36,12 @@ public class StartEndDateFilter implements PreStackFilter{
         return shouldInclude(accessors.getStartTimeAccessor(), event);
     }
 
+    @Override
+    public boolean shouldInclude(RecordedEvent event) {
+        Instant eventDate = Instant.ofEpochMilli(JfrRecordedEvents.getStartTime(event) / 1000000);
+        return !(eventDate.isBefore(startDate) || eventDate.isAfter(endDate));
+    }
+
     private boolean shouldInclude(IMemberAccessor<IQuantity, IItem> startTimeAccessor, IItem event) {
         long startTimestamp = startTimeAccessor.getMember(event).longValue();
         Instant eventDate = Instant.ofEpochMilli(startTimestamp / 1000000);
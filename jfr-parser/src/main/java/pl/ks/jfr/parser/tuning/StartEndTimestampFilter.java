@@ -15,12 +15,14 @@
  */
 package pl.ks.jfr.parser.tuning;
 
+import jdk.jfr.consumer.RecordedEvent;
 import lombok.Builder;
 import lombok.Value;
 import org.openjdk.jmc.common.item.IItem;
 import org.openjdk.jmc.common.item.IMemberAccessor;
 import org.openjdk.jmc.common.unit.IQuantity;
 import pl.ks.jfr.parser.JfrAccessors;
+import pl.ks.jfr.parser.JfrRecordedEvents;
 
 @Value
 @Builder
@@ -33,6 +35,12 @@ public class StartEndTimestampFilter implements PreStackFilter{
         return shouldInclude(accessors.getStartTimeAccessor(), event);
     }
 
+    @Override
+    public boolean shouldInclude(RecordedEvent event) {
+        long eventTs = JfrRecordedEvents.getStartTime(event) / 1000000 / 1000;
+        return !(eventTs < startTs || eventTs > endTs);
+    }
+
     private boolean shouldInclude(IMemberAccessor<IQuantity, IItem> startTimeAccessor, IItem event) {
         long eventTs = startTimeAccessor.getMember(event).longValue() / 1000000 / 1000;
         return !(eventTs < startTs || eventTs > endTs);
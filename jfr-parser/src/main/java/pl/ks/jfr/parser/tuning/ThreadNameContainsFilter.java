@@ -15,12 +15,15 @@
  */
 package pl.ks.jfr.parser.tuning;
 
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
 import lombok.Builder;
 import lombok.Value;
 import org.openjdk.jmc.common.IMCThread;
 import org.openjdk.jmc.common.item.IItem;
 import org.openjdk.jmc.common.item.IMemberAccessor;
 import pl.ks.jfr.parser.JfrAccessors;
+import pl.ks.jfr.parser.JfrRecordedEvents;
 
 @Value
 @Builder
@@ -32,6 +35,17 @@ public class ThreadNameContainsFilter implements PreStackFilter {
         return shouldInclude(accessors.getThreadAccessor(), event);
     }
 
+    @Override
+    public boolean shouldInclude(RecordedEvent event) {
+        RecordedThread thread = JfrRecordedEvents.getThread(event);
+        if (thread == null) {
+            return true;
+        }
+
+        String threadName = JfrRecordedEvents.getThreadName(thread).toLowerCase();
+        return threadName.contains(this.threadName.toLowerCase());
+    }
+
     private boolean shouldInclude(IMemberAccessor<IMCThread, IItem> threadAccessor, IItem event) {
         if (threadAccessor == null) {
             return true;
@@ -19,6 +19,8 @@ abstract class JfrControllerCommon {
         boolean reverseOn = ON.equals(params.get("reverseOn"));
         builder.reverseOn(reverseOn);
 
+        builder.minWidth(parseMinWidth(params.get("minWidth")));
+
         boolean threadFilterOn = ON.equals(params.get("threadFilterOn"));
         builder.threadFilterOn(threadFilterOn);
         if (threadFilterOn) {
@@ -116,6 +118,21 @@ abstract class JfrControllerCommon {
         return builder.build();
     }
 
+    /**
+     * A missing, malformed or negative width means no pruning of the flame graph.
+     */
+    private static double parseMinWidth(String minWidth) {
+        if (minWidth == null || minWidth.isBlank()) {
+            return 0;
+        }
+        try {
+            double width = Double.parseDouble(minWidth.trim());
+            return Double.isFinite(width) && width > 0 ? width : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     private static List<String> collectIndexedParams(Map<String, String> params, String prefix) {
         List<String> result = new ArrayList<>();
         for (int i = 0; ; i++) {
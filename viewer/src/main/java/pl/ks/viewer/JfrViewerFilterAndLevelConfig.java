@@ -45,6 +45,7 @@ public class JfrViewerFilterAndLevelConfig {
     long endTs;
     boolean consumeCpuOn;
     boolean reverseOn;
+    double minWidth;
     Set<AdditionalLevel> additionalLevels;
     int tableLimit;
     String localeLanguage;
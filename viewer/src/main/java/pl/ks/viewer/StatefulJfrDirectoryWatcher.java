@@ -0,0 +1,219 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.viewer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import pl.ks.jfr.parser.JfrParsedFile;
+
+/**
+ * Watches directories for new JFR files and appends them to a rolling recording per directory, kept by
+ * {@link StatefulJfrViewerService} under an id derived from the directory path. A file is parsed once it has not been
+ * modified for the settle time and only once, changes of an ingested file are ignored until it is deleted. Samples older than the retention
+ * window are evicted after every ingest.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class StatefulJfrDirectoryWatcher implements Closeable {
+    private static final long POLL_INTERVAL_MILLIS = 1000;
+    private static final Duration IDLE_EVICTION_INTERVAL = Duration.ofMinutes(1);
+
+    private final StatefulJfrViewerService jfrViewerService;
+    private final List<Path> directories;
+    private final Duration retention;
+    private final Duration settleTime;
+    private final boolean oldAsyncProfiler;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Set<Path> pendingFiles = new HashSet<>();
+    private final Map<Path, FileTime> ingestedFiles = new HashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+    private Instant lastEviction = Instant.MIN;
+
+    void start() {
+        if (directories.isEmpty()) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path directory : directories) {
+                watchedDirectories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), directory);
+                jfrViewerService.nameRecording(getRecordingId(directory), directory.toString());
+                addExistingFiles(directory);
+            }
+        } catch (IOException e) {
+            log.error("Cannot watch directories {}", directories, e);
+            throw new RuntimeException(e);
+        }
+        thread = new Thread(this::watch, "jfr-directory-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for JFR files, retention: {}", directories, retention);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (thread != null) {
+            thread.interrupt();
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    static UUID getRecordingId(Path directory) {
+        return UUID.nameUUIDFromBytes(directory.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                WatchKey key = watchService.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    addChangedFiles(key);
+                }
+                boolean ingested = ingestSettledFiles();
+                if (ingested || Instant.now().isAfter(lastEviction.plus(IDLE_EVICTION_INTERVAL))) {
+                    evictOldSamples();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (RuntimeException | IOException e) {
+                log.error("Cannot ingest JFR files from {}", directories, e);
+            }
+        }
+    }
+
+    private void addChangedFiles(WatchKey key) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        Instant retainedFrom = Instant.now().minus(retention);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                addExistingFiles(directory);
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            FileTime lastModified = getLastModifiedTime(file);
+            if (isJfrFile(file) && lastModified != null && !lastModified.toInstant().isBefore(retainedFrom)) {
+                pendingFiles.add(file);
+            }
+        }
+        key.reset();
+    }
+
+    private void addExistingFiles(Path directory) throws IOException {
+        JfrParsedFile recording = jfrViewerService.getFile(getRecordingId(directory));
+        List<String> recordedFilenames = recording == null ? List.of() : recording.getFilenames();
+        Instant retainedFrom = Instant.now().minus(retention);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                FileTime lastModified = getLastModifiedTime(file);
+                if (isJfrFile(file) && lastModified != null && !lastModified.toInstant().isBefore(retainedFrom)
+                        && !recordedFilenames.contains(file.getFileName().toString())) {
+                    pendingFiles.add(file);
+                }
+            }
+        }
+    }
+
+    private boolean ingestSettledFiles() throws IOException {
+        Instant settledBefore = Instant.now().minus(settleTime);
+        Map<Path, List<String>> settledFiles = new TreeMap<>();
+        Iterator<Path> iterator = pendingFiles.iterator();
+        while (iterator.hasNext()) {
+            Path file = iterator.next();
+            FileTime lastModified = getLastModifiedTime(file);
+            if (lastModified == null) {
+                iterator.remove();
+            } else if (ingestedFiles.containsKey(file)) {
+                // samples of an ingested file are already in the recording, appending it again would duplicate them
+                iterator.remove();
+                if (!lastModified.equals(ingestedFiles.put(file, lastModified))) {
+                    log.warn("{} was modified after it was ingested, changes are ignored", file);
+                }
+            } else if (lastModified.toInstant().isBefore(settledBefore)) {
+                iterator.remove();
+                ingestedFiles.put(file, lastModified);
+                settledFiles.computeIfAbsent(file.getParent(), directory -> new ArrayList<>()).add(file.toString());
+            }
+        }
+
+        settledFiles.forEach((directory, files) -> {
+            UUID uuid = getRecordingId(directory);
+            List<String> sortedFiles = files.stream().sorted().toList();
+            log.info("Ingesting {} JFR files from {}", sortedFiles.size(), directory);
+            if (jfrViewerService.getFile(uuid) == null) {
+                jfrViewerService.parseNewFiles(uuid, sortedFiles, oldAsyncProfiler, false, false, false);
+            } else {
+                jfrViewerService.appendFiles(uuid, sortedFiles);
+            }
+        });
+        return !settledFiles.isEmpty();
+    }
+
+    private void evictOldSamples() {
+        Instant retainedFrom = Instant.now().minus(retention);
+        for (Path directory : directories) {
+            jfrViewerService.evictSamplesBefore(getRecordingId(directory), retainedFrom);
+        }
+        // entries are kept until the file is deleted, a modified old file would be ingested again otherwise
+        ingestedFiles.keySet().removeIf(Files::notExists);
+        lastEviction = Instant.now();
+    }
+
+    private static FileTime getLastModifiedTime(Path file) throws IOException {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static boolean isJfrFile(Path file) {
+        String filename = file.getFileName().toString().toLowerCase();
+        return filename.endsWith(".jfr") || filename.endsWith(".jfr.gz");
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.viewer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import lombok.RequiredArgsConstructor;
+import pl.ks.jfr.parser.JfrCollapsedSamples;
+
+/**
+ * LRU cache of collapsed samples and time stats of stateful JFR files. Entries are weighted by the number of rows or
+ * methods they hold, a result is computed outside the lock, so two identical concurrent requests may both compute it.
+ * A result computed while entries were invalidated is not cached, it may come from the replaced file.
+ */
+@RequiredArgsConstructor
+class StatefulJfrResultCache {
+    private final long maxWeight;
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long invalidations;
+
+    JfrCollapsedSamples getCollapsedSamples(UUID uuid, String type, JfrViewerFilterAndLevelConfig config, Supplier<JfrCollapsedSamples> loader) {
+        return get(new Key(uuid, type, JfrCollapsedSamples.class, normalize(config, true)), loader, JfrCollapsedSamples::size);
+    }
+
+    SelfAndTotalTimeStats getTimeStats(UUID uuid, String type, JfrViewerFilterAndLevelConfig config, Supplier<SelfAndTotalTimeStats> loader) {
+        return get(new Key(uuid, type, SelfAndTotalTimeStats.class, normalize(config, false)), loader, stats -> stats.getMethodStats().size());
+    }
+
+    void invalidate(UUID uuid) {
+        invalidate(uuid, config -> true);
+    }
+
+    /**
+     * Removes entries of the file computed with a filter config matching {@code stale}, configs are passed with only
+     * the fields the results depend on.
+     */
+    synchronized void invalidate(UUID uuid, Predicate<JfrViewerFilterAndLevelConfig> stale) {
+        invalidations++;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().uuid().equals(uuid) && stale.test(entry.getKey().config())) {
+                weight -= entry.getValue().weight();
+                iterator.remove();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Key key, Supplier<T> loader, ToLongFunction<T> weigher) {
+        long invalidationsBeforeLoad;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return (T) entry.value();
+            }
+            invalidationsBeforeLoad = invalidations;
+        }
+        T value = loader.get();
+        long valueWeight = weigher.applyAsLong(value) + 1;
+        if (valueWeight > maxWeight) {
+            return value;
+        }
+        synchronized (this) {
+            if (invalidations != invalidationsBeforeLoad) {
+                return value;
+            }
+            Entry previous = entries.put(key, new Entry(value, valueWeight));
+            weight += valueWeight - (previous == null ? 0 : previous.weight());
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (weight > maxWeight && iterator.hasNext()) {
+                weight -= iterator.next().weight();
+                iterator.remove();
+            }
+        }
+        return value;
+    }
+
+    private static JfrViewerFilterAndLevelConfig normalize(JfrViewerFilterAndLevelConfig config, boolean withAdditionalLevels) {
+        JfrViewerFilterAndLevelConfig.JfrViewerFilterAndLevelConfigBuilder builder = JfrViewerFilterAndLevelConfig.builder()
+                .consumeCpuOn(config.isConsumeCpuOn())
+                .additionalLevels(withAdditionalLevels ? config.getAdditionalLevels() : Set.of());
+        if (config.isThreadFilterOn()) {
+            builder.threadFilterOn(true).threadFilter(config.getThreadFilter());
+        }
+        if (config.isThreadFilterContainsOn()) {
+            builder.threadFilterContainsOn(true).threadFilterContains(config.getThreadFilterContains());
+        }
+        if (config.isEcidFilterOn()) {
+            builder.ecidFilterOn(true).ecidFilter(config.getEcidFilter());
+        }
+        if (config.isStackTraceFilterOn()) {
+            builder.stackTraceFilterOn(true).stackTraceFilters(config.getStackTraceFilters());
+        }
+        if (config.isStackTraceNotContainsFilterOn()) {
+            builder.stackTraceNotContainsFilterOn(true).stackTraceNotContainsFilters(config.getStackTraceNotContainsFilters());
+        }
+        if (config.isEndDurationOn()) {
+            builder.endDurationOn(true)
+                    .endDate(config.getEndDate())
+                    .endDateDateTimeFormat(config.getEndDateDateTimeFormat())
+                    .localeLanguage(config.getLocaleLanguage())
+                    .duration(config.getDuration());
+        } else if (config.isWarmupCooldownOn()) {
+            builder.warmupCooldownOn(true).warmup(config.getWarmup()).cooldown(config.getCooldown());
+        } else if (config.isWarmupDurationOn()) {
+            builder.warmupDurationOn(true).wdWarmup(config.getWdWarmup()).wdDuration(config.getWdDuration());
+        } else if (config.isStartEndTimestampOn()) {
+            builder.startEndTimestampOn(true).startTs(config.getStartTs()).endTs(config.getEndTs());
+        }
+        return builder.build();
+    }
+
+    private record Key(UUID uuid, String type, Class<?> resultType, JfrViewerFilterAndLevelConfig config) {
+    }
+
+    private record Entry(Object value, long weight) {
+    }
+}
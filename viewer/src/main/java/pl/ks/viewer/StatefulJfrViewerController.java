@@ -16,18 +16,20 @@
 package pl.ks.viewer;
 
 import lombok.RequiredArgsConstructor;
-import org.apache.commons.compress.utils.IOUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import pl.ks.jfr.parser.JfrParsedFile;
 import pl.ks.viewer.io.TempFileUtils;
 
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -46,9 +48,16 @@ class StatefulJfrViewerController {
     @GetMapping("/upload-stateful-jfr")
     String uploadJfr(Model model) {
         model.addAttribute("files", jfrViewerService.getFiles());
+        model.addAttribute("snapshotsEnabled", jfrViewerService.isSnapshotsEnabled());
         return "upload-stateful-jfr";
     }
 
+    @PostMapping("/stateful-jfr/snapshots/reload")
+    String reloadSnapshots(Model model) {
+        jfrViewerService.loadSnapshots();
+        return uploadJfr(model);
+    }
+
     @PostMapping("/upload-stateful-jfr")
     String upload(Model model, @RequestParam("files") MultipartFile[] files,
                   @RequestParam(value = "oldAsyncProfiler", required = false) Boolean oldAsyncProfiler,
@@ -56,17 +65,27 @@ class StatefulJfrViewerController {
                   @RequestParam(value = "throwOnErroredFile", required = false) Boolean throwOnErroredFile,
                   @RequestParam(value = "unifyLambdas", required = false) Boolean unifyLambdas
     ) throws Exception {
+        jfrViewerService.parseNewFiles(saveCopies(files), oldAsyncProfiler != null && oldAsyncProfiler,
+                wallClockExactTime != null && wallClockExactTime, unifyLambdas != null && unifyLambdas,
+                throwOnErroredFile != null && throwOnErroredFile);
+        return uploadJfr(model);
+    }
+
+    @PostMapping("/stateful-jfr/single/append")
+    String append(Model model, @RequestParam("id") UUID uuid, @RequestParam("files") MultipartFile[] files) throws Exception {
+        jfrViewerService.appendFiles(uuid, saveCopies(files));
+        return uploadJfr(model);
+    }
+
+    private static List<String> saveCopies(MultipartFile[] files) throws IOException {
         List<String> savedCopies = new ArrayList<>(files.length);
         for (MultipartFile file : files) {
             String originalFilename = file.getOriginalFilename();
             String filePath = TempFileUtils.TEMP_DIR + originalFilename;
-            IOUtils.copy(file.getInputStream(), new FileOutputStream(filePath));
+            file.transferTo(Paths.get(filePath));
             savedCopies.add(filePath);
         }
-        jfrViewerService.parseNewFiles(savedCopies, oldAsyncProfiler != null && oldAsyncProfiler,
-                wallClockExactTime != null && wallClockExactTime, unifyLambdas != null && unifyLambdas,
-                throwOnErroredFile != null && throwOnErroredFile);
-        return uploadJfr(model);
+        return savedCopies;
     }
 
     @GetMapping("/stateful-jfr/single")
@@ -91,40 +110,34 @@ class StatefulJfrViewerController {
         return uploadJfr(model);
     }
 
-    @ResponseBody
     @GetMapping("/stateful-jfr/single/flames/execution")
-    byte[] getExecutionSamplesFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
-        return jfrViewerService.getExecutionSamplesFlameGraph(uuid, createConfig(params));
+    ResponseEntity<StreamingResponseBody> getExecutionSamplesFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
+        return html(jfrViewerService.getExecutionSamplesFlameGraph(uuid, createConfig(params)));
     }
 
-    @ResponseBody
     @GetMapping("/stateful-jfr/single/flames/wall")
-    byte[] getWallClockSamplesFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
-        return jfrViewerService.getWallClockSamplesFlameGraph(uuid, createConfig(params));
+    ResponseEntity<StreamingResponseBody> getWallClockSamplesFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
+        return html(jfrViewerService.getWallClockSamplesFlameGraph(uuid, createConfig(params)));
     }
 
-    @ResponseBody
     @GetMapping("/stateful-jfr/single/flames/allocation/count")
-    byte[] getAllocationSamplesCountFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
-        return jfrViewerService.getAllocationCountSamplesFlameGraph(uuid, createConfig(params));
+    ResponseEntity<StreamingResponseBody> getAllocationSamplesCountFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
+        return html(jfrViewerService.getAllocationCountSamplesFlameGraph(uuid, createConfig(params)));
     }
 
-    @ResponseBody
     @GetMapping("/stateful-jfr/single/flames/allocation/size")
-    byte[] getAllocationSamplesSizeFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
-        return jfrViewerService.getAllocationSizeSamplesFlameGraph(uuid, createConfig(params));
+    ResponseEntity<StreamingResponseBody> getAllocationSamplesSizeFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
+        return html(jfrViewerService.getAllocationSizeSamplesFlameGraph(uuid, createConfig(params)));
     }
 
-    @ResponseBody
     @GetMapping("/stateful-jfr/single/flames/lock/count")
-    byte[] getLockCountSamplesFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
-        return jfrViewerService.getLockCountSamplesFlameGraph(uuid, createConfig(params));
+    ResponseEntity<StreamingResponseBody> getLockCountSamplesFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
+        return html(jfrViewerService.getLockCountSamplesFlameGraph(uuid, createConfig(params)));
     }
 
-    @ResponseBody
     @GetMapping("/stateful-jfr/single/flames/lock/time")
-    byte[] getLockTimeSamplesFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
-        return jfrViewerService.getLockTimeSamplesFlameGraph(uuid, createConfig(params));
+    ResponseEntity<StreamingResponseBody> getLockTimeSamplesFlameGraph(@RequestParam("id") UUID uuid, @RequestParam Map<String, String> params) {
+        return html(jfrViewerService.getLockTimeSamplesFlameGraph(uuid, createConfig(params)));
     }
 
     @GetMapping("/stateful-jfr/single/correlation-id-stats")
@@ -210,4 +223,10 @@ class StatefulJfrViewerController {
         model.addAttribute("table", jfrViewerService.getLockTimeSamplesTimeStats(uuid, createConfig(params), SELF_TIME));
         return "uploaded-stateful-self-time-table";
     }
+
+    private static ResponseEntity<StreamingResponseBody> html(StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_HTML)
+                .body(body);
+    }
 }
@@ -1,12 +1,18 @@
 package pl.ks.viewer;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -17,37 +23,62 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import pl.ks.collapsed.CollapsedStack;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import pl.ks.jfr.parser.JfrAllocationSamples;
+import pl.ks.jfr.parser.JfrCollapsedSamples;
 import pl.ks.jfr.parser.JfrEcidInfo;
-import pl.ks.jfr.parser.JfrParsedAllocationEvent;
-import pl.ks.jfr.parser.JfrParsedCommonStackTraceEvent;
+import pl.ks.jfr.parser.JfrExecutionSamples;
+import pl.ks.jfr.parser.JfrLockSamples;
 import pl.ks.jfr.parser.JfrParsedCpuUsageEvent;
-import pl.ks.jfr.parser.JfrParsedEventWithTime;
-import pl.ks.jfr.parser.JfrParsedExecutionSampleEvent;
 import pl.ks.jfr.parser.JfrParsedFile;
-import pl.ks.jfr.parser.JfrParsedLockEvent;
+import pl.ks.jfr.parser.JfrParsedFileSnapshot;
 import pl.ks.jfr.parser.JfrParser;
+import pl.ks.jfr.parser.JfrSamples;
+import pl.ks.jfr.parser.JfrStackTrace;
 import pl.ks.viewer.flamegraph.FlameGraphExecutor;
+import pl.ks.viewer.io.TempFileUtils;
 
 @Slf4j
 @RequiredArgsConstructor
-class StatefulJfrViewerService {
+class StatefulJfrViewerService implements Closeable {
+    private static final String SNAPSHOT_EXTENSION = ".jfr-snapshot";
+
     private final Map<UUID, JfrParsedFile> parsedFiles = new ConcurrentHashMap<>();
+    private final Map<UUID, String> recordingNames = new ConcurrentHashMap<>();
+    private final Map<UUID, JfrParsedFile> pendingSnapshots = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> snapshotWriteMillis = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor snapshotWriter = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "jfr-snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final JfrParser jfrParser;
     private final FlameGraphExecutor flameGraphExecutor;
+    private final boolean memoryMappedSamples;
+    private final Path snapshotDirectory;
+    private final Duration snapshotInterval;
+    private final StatefulJfrResultCache resultCache;
 
     List<StatefulJfrFile> getFiles() {
         return parsedFiles.entrySet().stream()
                 .sorted(Comparator.comparing(o -> o.getValue().getParseStartDate()))
                 .map(entry -> StatefulJfrFile.builder()
                         .id(entry.getKey())
+                        .name(recordingNames.get(entry.getKey()))
                         .parseStartDate(entry.getValue().getParseStartDate())
                         .filenames(entry.getValue().getFilenames())
                         .build()
@@ -55,8 +86,78 @@ class StatefulJfrViewerService {
                 .toList();
     }
 
-    void remove(UUID uuid) {
+    void nameRecording(UUID uuid, String name) {
+        recordingNames.put(uuid, name);
+    }
+
+    synchronized void remove(UUID uuid) {
         parsedFiles.remove(uuid);
+        resultCache.invalidate(uuid);
+        pendingSnapshots.remove(uuid);
+        deleteSnapshot(uuid);
+    }
+
+    private void deleteSnapshot(UUID uuid) {
+        if (snapshotDirectory != null) {
+            try {
+                Files.deleteIfExists(getSnapshotPath(uuid));
+            } catch (IOException e) {
+                log.error("Cannot remove snapshot of {}", uuid, e);
+            }
+        }
+    }
+
+    /**
+     * Writes snapshots still waiting for the snapshot interval, a snapshot being written is finished first.
+     */
+    @Override
+    public void close() {
+        snapshotWriter.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pendingSnapshots.keySet().forEach(this::writeSnapshot);
+    }
+
+    boolean isSnapshotsEnabled() {
+        return snapshotDirectory != null;
+    }
+
+    void loadSnapshots() {
+        if (snapshotDirectory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(snapshotDirectory);
+            try (Stream<Path> paths = Files.list(snapshotDirectory)) {
+                paths.filter(path -> path.getFileName().toString().endsWith(SNAPSHOT_EXTENSION))
+                        .forEach(this::loadSnapshot);
+            }
+        } catch (IOException e) {
+            log.error("Cannot read snapshots from {}", snapshotDirectory, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void loadSnapshot(Path path) {
+        String filename = path.getFileName().toString();
+        try {
+            UUID uuid = UUID.fromString(filename.substring(0, filename.length() - SNAPSHOT_EXTENSION.length()));
+            if (parsedFiles.containsKey(uuid)) {
+                return;
+            }
+            putFile(uuid, JfrParsedFileSnapshot.read(path));
+            log.info("Loaded snapshot {}", path);
+        } catch (IOException | RuntimeException e) {
+            log.error("Cannot load snapshot {}, skipping it", path, e);
+        }
+    }
+
+    private Path getSnapshotPath(UUID uuid) {
+        return snapshotDirectory.resolve(uuid + SNAPSHOT_EXTENSION);
     }
 
     JfrParsedFile getFile(UUID uuid) {
@@ -65,11 +166,11 @@ class StatefulJfrViewerService {
 
     StatefulJfrHighChartCpuStats getCpuStats(UUID uuid, JfrViewerFilterAndLevelConfig config) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        List<Predicate<JfrParsedCpuUsageEvent>> filters = createFilters(config, jfrParsedFile, JfrParsedCpuUsageEvent.class);
+        List<LongPredicate> filters = createTimeFilters(config, jfrParsedFile);
 
         Stream<JfrParsedCpuUsageEvent> samples = jfrParsedFile.getCpuUsageSamples().stream();
-        for (Predicate<JfrParsedCpuUsageEvent> filter : filters) {
-            samples = samples.filter(filter);
+        for (LongPredicate filter : filters) {
+            samples = samples.filter(event -> filter.test(event.getEventTime().toEpochMilli()));
         }
         List<JfrParsedCpuUsageEvent> cpuUsageEvents = samples.sorted(Comparator.comparing(JfrParsedCpuUsageEvent::getEventTime)).toList();
         Map<String, List<JfrParsedCpuUsageEvent>> cpuUsageEventsPerFile = new HashMap<>();
@@ -84,10 +185,12 @@ class StatefulJfrViewerService {
     }
 
     List<JfrEcidInfo> getCorrelationIdStats(UUID uuid, JfrViewerFilterAndLevelConfig config) {
+        JfrParsedFile jfrParsedFile = getFile(uuid);
+        JfrExecutionSamples samples = jfrParsedFile.getExecutionSamples();
         Map<Long, JfrEcidInfo> correlationIdInfo = new ConcurrentHashMap<>();
-        getFilteredExecutionSamples(config, getFile(uuid)).stream().parallel().forEach(sample -> {
-            correlationIdInfo.computeIfAbsent(sample.getCorrelationId(), JfrEcidInfo::new)
-                    .newExecutionSample(sample.getEventTime(), sample.isConsumesCpu());
+        getFilteredSamples(config, jfrParsedFile, samples).forEach(index -> {
+            correlationIdInfo.computeIfAbsent(samples.getCorrelationId(index), JfrEcidInfo::new)
+                    .newExecutionSample(samples.getEventTime(index), samples.isConsumesCpu(index));
         });
         return correlationIdInfo.values().stream()
                 .sorted(Comparator.comparing(JfrEcidInfo::timeDiff).reversed())
@@ -95,248 +198,409 @@ class StatefulJfrViewerService {
                 .toList();
     }
 
-    byte[] getExecutionSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
+    StreamingResponseBody getExecutionSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        CollapsedStack collapsed = jfrParsedFile.asCollapsed(getFilteredExecutionSamples(config, jfrParsedFile),
-                config.getAdditionalLevels(), JfrParsedExecutionSampleEvent::getFullStackTrace, JfrParsedExecutionSampleEvent::getSamples);
-        return flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Execution samples", config.isReverseOn());
+        JfrExecutionSamples samples = jfrParsedFile.getExecutionSamples();
+        JfrCollapsedSamples collapsed = resultCache.getCollapsedSamples(uuid, "execution", config, () -> jfrParsedFile.collapse(samples, getFilteredSamples(config, jfrParsedFile, samples),
+                config.getAdditionalLevels(), samples::getSamples));
+        return outputStream -> flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Execution samples", config.isReverseOn(), config.getMinWidth(), outputStream);
     }
 
-    byte[] getWallClockSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
+    StreamingResponseBody getWallClockSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        CollapsedStack collapsed = jfrParsedFile.asCollapsed(getFilteredWallClockSamples(config, jfrParsedFile),
-                config.getAdditionalLevels(), JfrParsedExecutionSampleEvent::getFullStackTrace, JfrParsedExecutionSampleEvent::getSamples);
-        return flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Wall-clock samples", config.isReverseOn());
+        JfrExecutionSamples samples = jfrParsedFile.getWallClockSamples();
+        JfrCollapsedSamples collapsed = resultCache.getCollapsedSamples(uuid, "wall-clock", config, () -> jfrParsedFile.collapse(samples, getFilteredSamples(config, jfrParsedFile, samples),
+                config.getAdditionalLevels(), samples::getSamples));
+        return outputStream -> flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Wall-clock samples", config.isReverseOn(), config.getMinWidth(), outputStream);
     }
 
     TimeTable getExecutionSamplesTimeStats(UUID uuid, JfrViewerFilterAndLevelConfig config, TimeTable.Type type) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        return TimeTableCreator.create(generateTimeStats(getFilteredExecutionSamples(config, jfrParsedFile)), type, config.getTableLimit(), uuid);
+        JfrExecutionSamples samples = jfrParsedFile.getExecutionSamples();
+        SelfAndTotalTimeStats stats = resultCache.getTimeStats(uuid, "execution", config, () -> generateTimeStats(samples, getFilteredSamples(config, jfrParsedFile, samples)));
+        return TimeTableCreator.create(stats, type, config.getTableLimit(), uuid);
     }
 
     TimeTable getWallClockSamplesTimeStats(UUID uuid, JfrViewerFilterAndLevelConfig config, TimeTable.Type type) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        return TimeTableCreator.create(generateTimeStats(getFilteredWallClockSamples(config, jfrParsedFile)), type, config.getTableLimit(), uuid);
-    }
-
-    private List<JfrParsedExecutionSampleEvent> getFilteredExecutionSamples(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile) {
-        List<Predicate<JfrParsedExecutionSampleEvent>> filters = createFilters(config, jfrParsedFile, JfrParsedExecutionSampleEvent.class);
-
-        Stream<JfrParsedExecutionSampleEvent> samples = jfrParsedFile.getExecutionSamples().stream();
-        for (Predicate<JfrParsedExecutionSampleEvent> filter : filters) {
-            samples = samples.filter(filter);
-        }
-        return samples.toList();
-    }
-
-    private List<JfrParsedExecutionSampleEvent> getFilteredWallClockSamples(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile) {
-        List<Predicate<JfrParsedExecutionSampleEvent>> filters = createFilters(config, jfrParsedFile, JfrParsedExecutionSampleEvent.class);
-
-        Stream<JfrParsedExecutionSampleEvent> samples = jfrParsedFile.getWallClockSamples().stream();
-        for (Predicate<JfrParsedExecutionSampleEvent> filter : filters) {
-            samples = samples.filter(filter);
-        }
-        return samples.toList();
+        JfrExecutionSamples samples = jfrParsedFile.getWallClockSamples();
+        SelfAndTotalTimeStats stats = resultCache.getTimeStats(uuid, "wall-clock", config, () -> generateTimeStats(samples, getFilteredSamples(config, jfrParsedFile, samples)));
+        return TimeTableCreator.create(stats, type, config.getTableLimit(), uuid);
     }
 
-    byte[] getAllocationCountSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
+    StreamingResponseBody getAllocationCountSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        CollapsedStack collapsed = jfrParsedFile.asCollapsed(getFilteredAllocationSamples(config, jfrParsedFile), config.getAdditionalLevels(), JfrParsedAllocationEvent::getFullStackTrace);
-        return flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Allocation samples (count)", config.isReverseOn());
+        JfrAllocationSamples samples = jfrParsedFile.getAllocationSamples();
+        JfrCollapsedSamples collapsed = resultCache.getCollapsedSamples(uuid, "allocation-count", config, () -> jfrParsedFile.collapse(samples, getFilteredSamples(config, jfrParsedFile, samples), config.getAdditionalLevels()));
+        return outputStream -> flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Allocation samples (count)", config.isReverseOn(), config.getMinWidth(), outputStream);
     }
 
-    byte[] getAllocationSizeSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
+    StreamingResponseBody getAllocationSizeSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        CollapsedStack collapsed = jfrParsedFile.asCollapsed(getFilteredAllocationSamples(config, jfrParsedFile), config.getAdditionalLevels(), JfrParsedAllocationEvent::getFullStackTrace, JfrParsedAllocationEvent::getSize);
-        return flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Allocation samples (size)", config.isReverseOn());
+        JfrAllocationSamples samples = jfrParsedFile.getAllocationSamples();
+        JfrCollapsedSamples collapsed = resultCache.getCollapsedSamples(uuid, "allocation-size", config, () -> jfrParsedFile.collapse(samples, getFilteredSamples(config, jfrParsedFile, samples), config.getAdditionalLevels(), samples::getSize));
+        return outputStream -> flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Allocation samples (size)", config.isReverseOn(), config.getMinWidth(), outputStream);
     }
 
     TimeTable getAllocationCountSamplesTimeStats(UUID uuid, JfrViewerFilterAndLevelConfig config, TimeTable.Type type) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        SelfAndTotalTimeStats stats = generateTimeStats(getFilteredAllocationSamples(config, jfrParsedFile), JfrParsedAllocationEvent::getObjectClass);
+        JfrAllocationSamples samples = jfrParsedFile.getAllocationSamples();
+        SelfAndTotalTimeStats stats = resultCache.getTimeStats(uuid, "allocation-count", config, () -> generateTimeStats(samples, getFilteredSamples(config, jfrParsedFile, samples), samples::getObjectClass));
         return TimeTableCreator.create(stats, type, config.getTableLimit(), uuid);
     }
 
     TimeTable getAllocationSizeSamplesTimeStats(UUID uuid, JfrViewerFilterAndLevelConfig config, TimeTable.Type type) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        SelfAndTotalTimeStats stats = generateTimeStats(getFilteredAllocationSamples(config, jfrParsedFile), JfrParsedAllocationEvent::getSize, JfrParsedAllocationEvent::getObjectClass);
+        JfrAllocationSamples samples = jfrParsedFile.getAllocationSamples();
+        SelfAndTotalTimeStats stats = resultCache.getTimeStats(uuid, "allocation-size", config, () -> generateTimeStats(samples, getFilteredSamples(config, jfrParsedFile, samples), samples::getSize, samples::getObjectClass));
         return TimeTableCreator.create(stats, type, config.getTableLimit(), uuid);
     }
 
-    private List<JfrParsedAllocationEvent> getFilteredAllocationSamples(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile) {
-        List<Predicate<JfrParsedAllocationEvent>> filters = createFilters(config, jfrParsedFile, JfrParsedAllocationEvent.class);
-
-        Stream<JfrParsedAllocationEvent> samples = jfrParsedFile.getAllocationSamples().stream();
-        for (Predicate<JfrParsedAllocationEvent> filter : filters) {
-            samples = samples.filter(filter);
-        }
-        return samples.toList();
-    }
-
-    byte[] getLockCountSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
+    StreamingResponseBody getLockCountSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        CollapsedStack collapsed = jfrParsedFile.asCollapsed(getFilteredLockSamples(config, jfrParsedFile), config.getAdditionalLevels(), JfrParsedLockEvent::getFullStackTrace);
-        return flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Lock samples", config.isReverseOn());
+        JfrLockSamples samples = jfrParsedFile.getLockSamples();
+        JfrCollapsedSamples collapsed = resultCache.getCollapsedSamples(uuid, "lock-count", config, () -> jfrParsedFile.collapse(samples, getFilteredSamples(config, jfrParsedFile, samples), config.getAdditionalLevels()));
+        return outputStream -> flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Lock samples", config.isReverseOn(), config.getMinWidth(), outputStream);
     }
 
-    byte[] getLockTimeSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
+    StreamingResponseBody getLockTimeSamplesFlameGraph(UUID uuid, JfrViewerFilterAndLevelConfig config) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        CollapsedStack collapsed = jfrParsedFile.asCollapsed(getFilteredLockSamples(config, jfrParsedFile), config.getAdditionalLevels(), JfrParsedLockEvent::getFullStackTrace, JfrParsedLockEvent::getDuration);
-        return flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Lock samples", config.isReverseOn());
+        JfrLockSamples samples = jfrParsedFile.getLockSamples();
+        JfrCollapsedSamples collapsed = resultCache.getCollapsedSamples(uuid, "lock-time", config, () -> jfrParsedFile.collapse(samples, getFilteredSamples(config, jfrParsedFile, samples), config.getAdditionalLevels(), samples::getDuration));
+        return outputStream -> flameGraphExecutor.generateFlameGraphHtml5(collapsed, "Lock samples", config.isReverseOn(), config.getMinWidth(), outputStream);
     }
 
     TimeTable getLockCountSamplesTimeStats(UUID uuid, JfrViewerFilterAndLevelConfig config, TimeTable.Type type) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        SelfAndTotalTimeStats stats = generateTimeStats(getFilteredLockSamples(config, jfrParsedFile), JfrParsedLockEvent::getMonitorClass);
+        JfrLockSamples samples = jfrParsedFile.getLockSamples();
+        SelfAndTotalTimeStats stats = resultCache.getTimeStats(uuid, "lock-count", config, () -> generateTimeStats(samples, getFilteredSamples(config, jfrParsedFile, samples), samples::getMonitorClass));
         return TimeTableCreator.create(stats, type, config.getTableLimit(), uuid);
     }
 
     TimeTable getLockTimeSamplesTimeStats(UUID uuid, JfrViewerFilterAndLevelConfig config, TimeTable.Type type) {
         JfrParsedFile jfrParsedFile = parsedFiles.get(uuid);
-        SelfAndTotalTimeStats stats = generateTimeStats(getFilteredLockSamples(config, jfrParsedFile), JfrParsedLockEvent::getDuration, JfrParsedLockEvent::getMonitorClass);
+        JfrLockSamples samples = jfrParsedFile.getLockSamples();
+        SelfAndTotalTimeStats stats = resultCache.getTimeStats(uuid, "lock-time", config, () -> generateTimeStats(samples, getFilteredSamples(config, jfrParsedFile, samples), samples::getDuration, samples::getMonitorClass));
         return TimeTableCreator.create(stats, type, config.getTableLimit(), uuid);
     }
 
-    private List<JfrParsedLockEvent> getFilteredLockSamples(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile) {
-        List<Predicate<JfrParsedLockEvent>> filters = createFilters(config, jfrParsedFile, JfrParsedLockEvent.class);
-
-        Stream<JfrParsedLockEvent> samples = jfrParsedFile.getLockSamples().stream();
-        for (Predicate<JfrParsedLockEvent> filter : filters) {
-            samples = samples.filter(filter);
+    /**
+     * Time, thread and ECID filters select the samples to visit through indexes, the remaining filters are checked in
+     * a single fused predicate. Matching samples are streamed in parallel straight into the aggregation.
+     */
+    private IntStream getFilteredSamples(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile, JfrSamples<?> samples) {
+        TimeWindow timeWindow = getTimeWindow(config, jfrParsedFile);
+        BitSet selected = findSamplesOfThreadsAndCorrelationId(config, jfrParsedFile, samples);
+        IntStream indices;
+        if (timeWindow != null) {
+            indices = Arrays.stream(samples.findSamplesBetween(timeWindow.startDate(), timeWindow.endDate()));
+        } else {
+            indices = selected == null ? IntStream.range(0, samples.size()) : selected.stream();
+            selected = null;
         }
 
-        return samples.toList();
+        IntPredicate filter = createFilter(config, jfrParsedFile, samples, selected);
+        if (filter != null) {
+            indices = indices.filter(filter);
+        }
+        return indices.parallel();
     }
 
     UUID parseNewFiles(List<String> files, boolean oldAsyncProfiler, boolean wallClockExactTime, boolean unifyLambdas, boolean throwOnErroredFile) {
         UUID uuid = UUID.randomUUID();
+        parseNewFiles(uuid, files, oldAsyncProfiler, wallClockExactTime, unifyLambdas, throwOnErroredFile);
+        return uuid;
+    }
+
+    synchronized void parseNewFiles(UUID uuid, List<String> files, boolean oldAsyncProfiler, boolean wallClockExactTime, boolean unifyLambdas, boolean throwOnErroredFile) {
         List<Path> paths = files.stream()
                 .map(Paths::get)
                 .toList();
 
         JfrParsedFile parsedFile = jfrParser.parse(paths, oldAsyncProfiler, wallClockExactTime, unifyLambdas, throwOnErroredFile);
         addNewFile(uuid, parsedFile);
-        return uuid;
+    }
+
+    synchronized void appendFiles(UUID uuid, List<String> files) {
+        List<Path> paths = files.stream()
+                .map(Paths::get)
+                .toList();
+
+        JfrParsedFile parent = getFile(uuid);
+        if (parent == null) {
+            log.warn("Recording {} was removed, files {} are not appended", uuid, files);
+            return;
+        }
+        JfrParsedFile parsedFile = jfrParser.append(parent, paths);
+        scheduleSnapshot(uuid, parsedFile);
+        Instant appendedFrom = parsedFile.getAppendedEventDates().getStartDate();
+        putFile(uuid, parsedFile, config -> {
+            TimeWindow timeWindow = getFixedTimeWindow(config);
+            return timeWindow == null || !Instant.ofEpochMilli(timeWindow.endDate()).isBefore(appendedFrom);
+        });
+    }
+
+    synchronized void evictSamplesBefore(UUID uuid, Instant date) {
+        JfrParsedFile parent = getFile(uuid);
+        if (parent == null) {
+            return;
+        }
+        JfrParsedFile parsedFile = jfrParser.evictBefore(parent, date);
+        if (parsedFile == parent) {
+            return;
+        }
+        scheduleSnapshot(uuid, parsedFile);
+        putFile(uuid, parsedFile, config -> {
+            TimeWindow timeWindow = getFixedTimeWindow(config);
+            return timeWindow == null || Instant.ofEpochMilli(timeWindow.startDate()).isBefore(date);
+        });
+    }
+
+    /**
+     * Time window set by dates or timestamps, results limited to it don't change when samples outside of it are added
+     * or removed. Other windows move with the min and max event dates.
+     */
+    private static TimeWindow getFixedTimeWindow(JfrViewerFilterAndLevelConfig config) {
+        return config.isEndDurationOn() || config.isStartEndTimestampOn() ? getTimeWindow(config, null) : null;
     }
 
     void addNewFile(UUID uuid, JfrParsedFile parsedFile) {
+        scheduleSnapshot(uuid, parsedFile);
+        putFile(uuid, parsedFile);
+    }
+
+    /**
+     * Snapshots are written by a single thread outside of the service lock, at most once per snapshot interval for
+     * a recording. Versions of the recording created in the meantime are coalesced, only the latest one is written.
+     */
+    private void scheduleSnapshot(UUID uuid, JfrParsedFile parsedFile) {
+        if (snapshotDirectory == null) {
+            return;
+        }
+        if (pendingSnapshots.put(uuid, parsedFile) == null) {
+            long nextWriteMillis = snapshotWriteMillis.getOrDefault(uuid, 0L) + snapshotInterval.toMillis();
+            long delay = Math.max(0, nextWriteMillis - System.currentTimeMillis());
+            snapshotWriter.schedule(() -> writeSnapshot(uuid), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void writeSnapshot(UUID uuid) {
+        snapshotWriteMillis.put(uuid, System.currentTimeMillis());
+        JfrParsedFile parsedFile = pendingSnapshots.remove(uuid);
+        if (parsedFile == null) {
+            return;
+        }
+        try {
+            JfrParsedFileSnapshot.write(parsedFile, getSnapshotPath(uuid));
+        } catch (IOException e) {
+            log.error("Cannot write snapshot of {}", uuid, e);
+        }
+        synchronized (this) {
+            if (!parsedFiles.containsKey(uuid)) {
+                // removed while its snapshot was written
+                deleteSnapshot(uuid);
+            }
+        }
+    }
+
+    private void putFile(UUID uuid, JfrParsedFile parsedFile) {
+        putFile(uuid, parsedFile, config -> true);
+    }
+
+    private void putFile(UUID uuid, JfrParsedFile parsedFile, Predicate<JfrViewerFilterAndLevelConfig> staleResults) {
+        if (memoryMappedSamples) {
+            try {
+                parsedFile.mapSamples(Paths.get(TempFileUtils.TEMP_DIR));
+            } catch (IOException e) {
+                log.error("Cannot map samples of {} to files", uuid, e);
+                throw new RuntimeException(e);
+            }
+        }
         parsedFiles.put(uuid, parsedFile);
+        resultCache.invalidate(uuid, staleResults);
     }
 
-    private <T extends JfrParsedCommonStackTraceEvent> SelfAndTotalTimeStats generateTimeStats(List<T> events) {
-        return generateTimeStats(events, ignored -> 1L, null);
+    SelfAndTotalTimeStats generateTimeStats(JfrSamples<?> samples, IntStream indices) {
+        return generateTimeStats(samples, indices, ignored -> 1L, null);
     }
 
-    private <T extends JfrParsedCommonStackTraceEvent> SelfAndTotalTimeStats generateTimeStats(
-            List<T> events,
-            Function<T, String> additionalConsumingResourceFunction
+    private SelfAndTotalTimeStats generateTimeStats(
+            JfrSamples<?> samples,
+            IntStream indices,
+            IntFunction<String> additionalConsumingResourceFunction
     ) {
-        return generateTimeStats(events, ignored -> 1L, additionalConsumingResourceFunction);
+        return generateTimeStats(samples, indices, ignored -> 1L, additionalConsumingResourceFunction);
     }
 
-    private <T extends JfrParsedCommonStackTraceEvent> SelfAndTotalTimeStats generateTimeStats(
-            List<T> events,
-            Function<T, Long> countFunction,
-            Function<T, String> additionalConsumingResourceFunction
+    private SelfAndTotalTimeStats generateTimeStats(
+            JfrSamples<?> samples,
+            IntStream indices,
+            IntToLongFunction countFunction,
+            IntFunction<String> additionalConsumingResourceFunction
     ) {
+        Map<StackTraceWithResource, LongAdder> stackTraceCounts = new ConcurrentHashMap<>();
+        indices.parallel()
+                .forEach(index -> {
+                    String resource = additionalConsumingResourceFunction == null ? null : additionalConsumingResourceFunction.apply(index);
+                    stackTraceCounts.computeIfAbsent(new StackTraceWithResource(samples.getStackTrace(index), resource), ignored -> new LongAdder())
+                            .add(countFunction.applyAsLong(index));
+                });
+
         SelfAndTotalTimeStats selfAndTotalTimeStats = new SelfAndTotalTimeStats();
-        events.stream().parallel()
-                .forEach(event -> {
-                    String[] stackTrace = event.getStackTrace();
-                    Set<String> visited = new HashSet<>();
-                    Long count = countFunction.apply(event);
+        stackTraceCounts.entrySet().stream().parallel()
+                .forEach(entry -> {
+                    JfrStackTrace stackTrace = entry.getKey().stackTrace();
+                    Set<Integer> visited = new HashSet<>();
+                    long count = entry.getValue().sum();
                     selfAndTotalTimeStats.newStackTrace(count);
-                    for (int i = stackTrace.length - 1; i >= 0; i--) {
-                        if (visited.contains(stackTrace[i])) {
+                    for (int i = stackTrace.getDepth() - 1; i >= 0; i--) {
+                        if (!visited.add(stackTrace.getFrameId(i))) {
                             continue;
                         }
-                        visited.add(stackTrace[i]);
-                        boolean consumingResource = additionalConsumingResourceFunction == null && i == stackTrace.length - 1;
-                        selfAndTotalTimeStats.methodSample(stackTrace[i], consumingResource, count);
+                        boolean consumingResource = additionalConsumingResourceFunction == null && i == stackTrace.getDepth() - 1;
+                        selfAndTotalTimeStats.methodSample(stackTrace.getFrame(i), consumingResource, count);
                     }
                     if (additionalConsumingResourceFunction != null) {
-                        selfAndTotalTimeStats.methodSample(additionalConsumingResourceFunction.apply(event), true, count);
+                        selfAndTotalTimeStats.methodSample(entry.getKey().resource(), true, count);
                     }
                 });
         return selfAndTotalTimeStats;
     }
 
-    @SneakyThrows
-    private <T> List<Predicate<T>> createFilters(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile, Class<T> clazz) {
-        List<Predicate<T>> filters = new ArrayList<>(2);
+    private IntPredicate createFilter(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile, JfrSamples<?> samples, BitSet selected) {
+        // cheapest first: a bit of the selected samples, a flag of the sample, then a bit of its stack trace
+        List<IntPredicate> filters = new ArrayList<>(3);
 
-        if (JfrParsedExecutionSampleEvent.class.isAssignableFrom(clazz)) {
+        if (selected != null) {
+            filters.add(selected::get);
+        }
+
+        if (samples instanceof JfrExecutionSamples executionSamples) {
             if (config.isConsumeCpuOn()) {
-                filters.add(t -> ((JfrParsedExecutionSampleEvent) t).isConsumesCpu());
+                filters.add(executionSamples::isConsumesCpu);
             }
         }
 
-        if (JfrParsedCommonStackTraceEvent.class.isAssignableFrom(clazz)) {
-            if (config.isThreadFilterOn()) {
-                filters.add(t -> ((JfrParsedCommonStackTraceEvent) t).getThreadName().equalsIgnoreCase(config.getThreadFilter()));
-            }
-            if (config.isThreadFilterContainsOn()) {
-                filters.add(t -> ((JfrParsedCommonStackTraceEvent) t).getThreadName().toLowerCase().contains(config.getThreadFilterContains().toLowerCase()));
-            }
-            if (config.isEcidFilterOn()) {
-                filters.add(t -> ((JfrParsedCommonStackTraceEvent) t).getCorrelationId() == config.getEcidFilter());
-            }
-            if (config.isStackTraceFilterOn()) {
-                for (String filter : config.getStackTraceFilters()) {
-                    filters.add(t -> ((JfrParsedCommonStackTraceEvent) t).stackTraceContains(filter));
-                }
-            }
-            if (config.isStackTraceNotContainsFilterOn()) {
-                for (String filter : config.getStackTraceNotContainsFilters()) {
-                    filters.add(t -> ((JfrParsedCommonStackTraceEvent) t).stackTraceNotContains(filter));
+        if (config.isStackTraceFilterOn() || config.isStackTraceNotContainsFilterOn()) {
+            BitSet stackTraceIds = findStackTraces(config, jfrParsedFile);
+            filters.add(index -> stackTraceIds.get(samples.getStackTraceId(index)));
+        }
+
+        return fuse(filters);
+    }
+
+    private static IntPredicate fuse(List<IntPredicate> filters) {
+        if (filters.isEmpty()) {
+            return null;
+        }
+        if (filters.size() == 1) {
+            return filters.get(0);
+        }
+        IntPredicate[] predicates = filters.toArray(IntPredicate[]::new);
+        return index -> {
+            for (IntPredicate predicate : predicates) {
+                if (!predicate.test(index)) {
+                    return false;
                 }
             }
+            return true;
+        };
+    }
+
+    /**
+     * Samples passing thread and correlation id filters, {@code null} if there are none. Filters are resolved once
+     * against the thread names dictionary and samples grouped by thread or correlation id, then combined.
+     */
+    private static BitSet findSamplesOfThreadsAndCorrelationId(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile, JfrSamples<?> samples) {
+        BitSet found = null;
+        if (config.isThreadFilterOn()) {
+            BitSet threadIds = jfrParsedFile.getThreadNames().find(threadName -> threadName.equalsIgnoreCase(config.getThreadFilter()));
+            found = and(found, samples.findSamplesOfThreads(threadIds));
+        }
+        if (config.isThreadFilterContainsOn()) {
+            String threadFilterContains = config.getThreadFilterContains().toLowerCase();
+            BitSet threadIds = jfrParsedFile.getThreadNames().find(threadName -> threadName.toLowerCase().contains(threadFilterContains));
+            found = and(found, samples.findSamplesOfThreads(threadIds));
         }
+        if (config.isEcidFilterOn()) {
+            found = and(found, samples.findSamplesOfCorrelationId(config.getEcidFilter()));
+        }
+        return found;
+    }
 
-        if (JfrParsedEventWithTime.class.isAssignableFrom(clazz)) {
-            if (config.isEndDurationOn()) {
-                Locale locale = new Locale(config.getLocaleLanguage());
-                SimpleDateFormat simpleDateFormat = new SimpleDateFormat(config.getEndDateDateTimeFormat(), locale);
-                Date parsedDate = simpleDateFormat.parse(config.getEndDate());
-                Instant endDateTmp = parsedDate.toInstant();
-                Instant startDateTmp = endDateTmp.minus(config.getDuration(), ChronoUnit.MILLIS);
-                Instant endDate = endDateTmp.with(ChronoField.MILLI_OF_SECOND, 999);
-                Instant startDate = startDateTmp;
-                filters.add(t -> {
-                    JfrParsedEventWithTime event = (JfrParsedEventWithTime) t;
-                    return !(event.getEventTime().isBefore(startDate) || event.getEventTime().isAfter(endDate));
-                });
-            } else if (config.isWarmupCooldownOn()) {
-                Instant startDate = jfrParsedFile.getMinEventDate().plus(config.getWarmup(), ChronoUnit.SECONDS);
-                Instant endDate = jfrParsedFile.getMaxEventDate().minus(config.getCooldown(), ChronoUnit.SECONDS);
-                filters.add(t -> {
-                    JfrParsedEventWithTime event = (JfrParsedEventWithTime) t;
-                    return !(event.getEventTime().isBefore(startDate) || event.getEventTime().isAfter(endDate));
-                });
-            } else if (config.isWarmupDurationOn()) {
-                Instant startDate = jfrParsedFile.getMinEventDate().plus(config.getWdWarmup(), ChronoUnit.SECONDS);
-                Instant endDate = startDate.plus(config.getWdDuration(), ChronoUnit.SECONDS);
-                filters.add(t -> {
-                    JfrParsedEventWithTime event = (JfrParsedEventWithTime) t;
-                    return !(event.getEventTime().isBefore(startDate) || event.getEventTime().isAfter(endDate));
-                });
-            } else if (config.isStartEndTimestampOn()) {
-                filters.add(t -> {
-                    JfrParsedEventWithTime event = (JfrParsedEventWithTime) t;
-                    long startTs = config.getStartTs() * 1000;
-                    long endTs = (config.getEndTs() * 1000) + 999;
-                    return !(event.getEventTime().toEpochMilli() < startTs || event.getEventTime().toEpochMilli() > endTs);
-                });
+    private static BitSet and(BitSet found, BitSet other) {
+        if (found == null) {
+            return other;
+        }
+        found.and(other);
+        return found;
+    }
+
+    /**
+     * Ids of stack traces passing all stack trace filters, the filters are resolved against stack traces once and
+     * combined, so samples are checked with a single lookup.
+     */
+    private static BitSet findStackTraces(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile) {
+        BitSet stackTraceIds = new BitSet();
+        stackTraceIds.set(0, jfrParsedFile.getStackTraceTable().size());
+        if (config.isStackTraceFilterOn()) {
+            for (String filter : config.getStackTraceFilters()) {
+                stackTraceIds.and(jfrParsedFile.findStackTracesContaining(filter));
             }
         }
+        if (config.isStackTraceNotContainsFilterOn()) {
+            for (String filter : config.getStackTraceNotContainsFilters()) {
+                stackTraceIds.andNot(jfrParsedFile.findStackTracesContaining(filter));
+            }
+        }
+        return stackTraceIds;
+    }
+
+    private List<LongPredicate> createTimeFilters(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile) {
+        List<LongPredicate> filters = new ArrayList<>(1);
+
+        TimeWindow timeWindow = getTimeWindow(config, jfrParsedFile);
+        if (timeWindow != null) {
+            long startDate = timeWindow.startDate();
+            long endDate = timeWindow.endDate();
+            filters.add(eventTime -> eventTime >= startDate && eventTime <= endDate);
+        }
 
         return filters;
     }
 
+    @SneakyThrows
+    private static TimeWindow getTimeWindow(JfrViewerFilterAndLevelConfig config, JfrParsedFile jfrParsedFile) {
+        if (config.isEndDurationOn()) {
+            Locale locale = new Locale(config.getLocaleLanguage());
+            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(config.getEndDateDateTimeFormat(), locale);
+            Date parsedDate = simpleDateFormat.parse(config.getEndDate());
+            Instant endDateTmp = parsedDate.toInstant();
+            Instant startDateTmp = endDateTmp.minus(config.getDuration(), ChronoUnit.MILLIS);
+            return new TimeWindow(startDateTmp.toEpochMilli(), endDateTmp.with(ChronoField.MILLI_OF_SECOND, 999).toEpochMilli());
+        } else if (config.isWarmupCooldownOn()) {
+            long startDate = jfrParsedFile.getMinEventDate().plus(config.getWarmup(), ChronoUnit.SECONDS).toEpochMilli();
+            long endDate = jfrParsedFile.getMaxEventDate().minus(config.getCooldown(), ChronoUnit.SECONDS).toEpochMilli();
+            return new TimeWindow(startDate, endDate);
+        } else if (config.isWarmupDurationOn()) {
+            Instant startInstant = jfrParsedFile.getMinEventDate().plus(config.getWdWarmup(), ChronoUnit.SECONDS);
+            return new TimeWindow(startInstant.toEpochMilli(), startInstant.plus(config.getWdDuration(), ChronoUnit.SECONDS).toEpochMilli());
+        } else if (config.isStartEndTimestampOn()) {
+            return new TimeWindow(config.getStartTs() * 1000, (config.getEndTs() * 1000) + 999);
+        }
+        return null;
+    }
+
     UUID trimToMethod(UUID parentUuid, String methodName, JfrParsedFile.Direction direction) {
         UUID childUuid = UUID.randomUUID();
         JfrParsedFile childFile = jfrParser.trim(getFile(parentUuid), methodName, direction);
         addNewFile(childUuid, childFile);
         return childUuid;
     }
+
+    private record TimeWindow(long startDate, long endDate) {
+    }
+
+    private record StackTraceWithResource(JfrStackTrace stackTrace, String resource) {
+    }
 }
@@ -15,7 +15,13 @@
  */
 package pl.ks.viewer;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import pl.ks.jfr.parser.JfrCollapsedParser;
@@ -34,7 +40,31 @@ class ViewerConfiguration {
     }
 
     @Bean
-    StatefulJfrViewerService statefulJfrViewerService() {
-        return new StatefulJfrViewerService(jfrParser, flameGraphExecutor);
+    StatefulJfrViewerService statefulJfrViewerService(@Value("${stateful-jfr.memory-mapped-samples:false}") boolean memoryMappedSamples,
+                                                      @Value("${stateful-jfr.snapshot-directory:}") String snapshotDirectory,
+                                                      @Value("${stateful-jfr.snapshot-interval-seconds:60}") long snapshotIntervalSeconds,
+                                                      @Value("${stateful-jfr.result-cache-weight:200000}") long resultCacheWeight) {
+        StatefulJfrViewerService service = new StatefulJfrViewerService(jfrParser, flameGraphExecutor, memoryMappedSamples,
+                snapshotDirectory.isBlank() ? null : Paths.get(snapshotDirectory), Duration.ofSeconds(snapshotIntervalSeconds),
+                new StatefulJfrResultCache(resultCacheWeight));
+        service.loadSnapshots();
+        return service;
+    }
+
+    @Bean
+    StatefulJfrDirectoryWatcher statefulJfrDirectoryWatcher(StatefulJfrViewerService statefulJfrViewerService,
+                                                            @Value("${stateful-jfr.watch.directories:}") String directories,
+                                                            @Value("${stateful-jfr.watch.retention-hours:24}") long retentionHours,
+                                                            @Value("${stateful-jfr.watch.settle-seconds:10}") long settleSeconds,
+                                                            @Value("${stateful-jfr.watch.old-async-profiler:false}") boolean oldAsyncProfiler) {
+        List<Path> watchedDirectories = Arrays.stream(directories.split(","))
+                .map(String::trim)
+                .filter(directory -> !directory.isEmpty())
+                .map(Paths::get)
+                .toList();
+        StatefulJfrDirectoryWatcher watcher = new StatefulJfrDirectoryWatcher(statefulJfrViewerService, watchedDirectories,
+                Duration.ofHours(retentionHours), Duration.ofSeconds(settleSeconds), oldAsyncProfiler);
+        watcher.start();
+        return watcher;
     }
 }
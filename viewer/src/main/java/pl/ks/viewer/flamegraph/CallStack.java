@@ -22,6 +22,10 @@ public class CallStack {
         size++;
     }
 
+    public void push(FrameTitle title) {
+        push(title.name(), title.type());
+    }
+
     public void pop() {
         size--;
     }
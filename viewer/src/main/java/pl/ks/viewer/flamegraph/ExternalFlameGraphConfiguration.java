@@ -15,13 +15,14 @@
  */
 package pl.ks.viewer.flamegraph;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration(proxyBeanMethods = false)
 public class ExternalFlameGraphConfiguration {
     @Bean
-    FlameGraphExecutor externalFlameGraphExecutor() {
-        return new FlameGraphExecutor();
+    FlameGraphExecutor externalFlameGraphExecutor(@Value("${flame-graph.parallelism:0}") int parallelism) {
+        return new FlameGraphExecutor(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
     }
 }
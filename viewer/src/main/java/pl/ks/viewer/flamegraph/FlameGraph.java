@@ -16,10 +16,10 @@ import static pl.ks.viewer.flamegraph.Frame.*;
 import static pl.ks.viewer.flamegraph.ResourceProcessor.*;
 
 public class FlameGraph implements Comparator<Frame> {
-    private static final Frame[] EMPTY_FRAME_ARRAY = {};
     private static final String[] FRAME_SUFFIX = {"_[0]", "_[j]", "_[i]", "", "", "_[k]", "_[1]"};
-    private static final byte HAS_SUFFIX = (byte) 0x80;
+    static final byte HAS_SUFFIX = (byte) 0x80;
     private static final int FLUSH_THRESHOLD = 15000;
+    private static final String OTHER_FRAME_TITLE = "[other]";
     private static final Pattern TID_FRAME_PATTERN = Pattern.compile("\\[(.* )?tid=\\d+]");
 
     private final Arguments args;
@@ -48,13 +48,7 @@ public class FlameGraph implements Comparator<Frame> {
 
             for (int from = 0, to; from < space; from = to + 1) {
                 if ((to = line.indexOf(';', from)) < 0) to = space;
-                String name = line.substring(from, to);
-                byte type = detectType(name);
-                if ((type & HAS_SUFFIX) != 0) {
-                    name = name.substring(0, name.length() - 4);
-                    type ^= HAS_SUFFIX;
-                }
-                stack.push(name, type);
+                stack.push(FrameTitle.of(line.substring(from, to)));
             }
 
             addSample(stack, ticks);
@@ -113,7 +107,7 @@ public class FlameGraph implements Comparator<Frame> {
 
                 if (level > 0) {
                     Frame parent = levels[level - 1];
-                    parent.put(f.key, f);
+                    parent.putChild(f);
                     parent.self -= total;
                     depth = Math.max(depth, level);
                 }
@@ -134,7 +128,7 @@ public class FlameGraph implements Comparator<Frame> {
             addSample(stack, frame.self);
         }
         if (!frame.isEmpty()) {
-            for (Frame child : frame.values()) {
+            for (Frame child : frame.getChildren()) {
                 stack.push(strings[child.getTitleIndex()], child.getType());
                 rebuild(child, stack, strings);
                 stack.pop();
@@ -169,8 +163,35 @@ public class FlameGraph implements Comparator<Frame> {
         depth = Math.max(depth, stack.size);
     }
 
+    /**
+     * Adds all samples of a graph built with the same arguments, so partial graphs can be built concurrently.
+     */
+    public void merge(FlameGraph other) {
+        String[] titles = other.cpool.keys();
+        int[] titleIndexes = new int[titles.length];
+        for (int i = 0; i < titles.length; i++) {
+            titleIndexes[i] = cpool.index(titles[i]);
+        }
+        mergeFrame(root, other.root, titleIndexes);
+        depth = Math.max(depth, other.depth);
+    }
+
+    private static void mergeFrame(Frame frame, Frame other, int[] titleIndexes) {
+        frame.total += other.total;
+        frame.self += other.self;
+        frame.inlined += other.inlined;
+        frame.c1 += other.c1;
+        frame.interpreted += other.interpreted;
+        for (Frame otherChild : other.getChildren()) {
+            mergeFrame(frame.getChild(titleIndexes[otherChild.getTitleIndex()], otherChild.getKeyType()), otherChild, titleIndexes);
+        }
+    }
+
     public void dump(PrintStream out) {
         mintotal = (long) (root.total * args.minwidth / 100);
+        if (mintotal > 0) {
+            root.prune(mintotal, cpool.index(OTHER_FRAME_TITLE));
+        }
 
         if ("collapsed".equals(args.output)) {
             printFrameCollapsed(out, root, cpool.keys());
@@ -257,7 +278,7 @@ public class FlameGraph implements Comparator<Frame> {
         lastX = x;
         lastTotal = frame.total;
 
-        Frame[] children = frame.values().toArray(EMPTY_FRAME_ARRAY);
+        Frame[] children = frame.getChildren();
         Arrays.sort(children, this);
 
         x += frame.self;
@@ -284,7 +305,7 @@ public class FlameGraph implements Comparator<Frame> {
         }
 
         if (!frame.isEmpty()) {
-            for (Frame child : frame.values()) {
+            for (Frame child : frame.getChildren()) {
                 if (child.total >= mintotal) {
                     printFrameCollapsed(out, child, strings);
                 }
@@ -336,7 +357,7 @@ public class FlameGraph implements Comparator<Frame> {
         return child;
     }
 
-    private static byte detectType(String title) {
+    static byte detectType(String title) {
         if (title.endsWith("_[j]")) {
             return TYPE_JIT_COMPILED | HAS_SUFFIX;
         } else if (title.endsWith("_[i]")) {
@@ -385,6 +406,7 @@ public class FlameGraph implements Comparator<Frame> {
 
     @Override
     public int compare(Frame f1, Frame f2) {
-        return order[f1.getTitleIndex()] - order[f2.getTitleIndex()];
+        int result = order[f1.getTitleIndex()] - order[f2.getTitleIndex()];
+        return result != 0 ? result : f1.getKeyType() - f2.getKeyType();
     }
 }
@@ -15,18 +15,33 @@
  */
 package pl.ks.viewer.flamegraph;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.FileReader;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import pl.ks.collapsed.CollapsedStack;
-import pl.ks.collapsed.CollapsedStackBufferedReader;
+import pl.ks.jfr.parser.JfrCollapsedSamples;
+import pl.ks.jfr.parser.JfrStackTrace;
 
 @Slf4j
 @RequiredArgsConstructor
 public class FlameGraphExecutor {
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final int MIN_ROWS_PER_PART = 10_000;
+
+    private final int parallelism;
+
     public void generateFlameGraphHtml5(String inputFile, String outputFile, String title, boolean reversed) {
         try {
             String[] args;
@@ -48,24 +63,136 @@ public class FlameGraphExecutor {
         }
     }
 
-    public byte[] generateFlameGraphHtml5(CollapsedStack inputFile, String title, boolean reversed) {
+    public void generateFlameGraphHtml5(JfrCollapsedSamples collapsedSamples, String title, boolean reversed, double minWidth, OutputStream outputStream) {
         try {
-            String[] args;
+            List<String> args = new ArrayList<>(List.of("--title", title));
             if (reversed) {
-                args = new String[]{"--title", title, "--reverse"};
-            } else {
-                args = new String[]{"--title", title};
+                args.add("--reverse");
             }
-            FlameGraph flameGraph = new FlameGraph(new Arguments(args));
-            try (CollapsedStackBufferedReader bufferedReader = new CollapsedStackBufferedReader(inputFile)) {
-                flameGraph.parseCollapsed(bufferedReader);
+            if (minWidth > 0) {
+                args.add("--minwidth");
+                args.add(Double.toString(minWidth));
             }
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            flameGraph.dump(new PrintStream(byteArrayOutputStream));
-            return byteArrayOutputStream.toByteArray();
+            FlameGraph flameGraph = createFlameGraph(new Arguments(args.toArray(String[]::new)), collapsedSamples);
+            PrintStream printStream = new PrintStream(new BufferedOutputStream(new FailingOutputStream(outputStream), OUTPUT_BUFFER_SIZE));
+            flameGraph.dump(printStream);
+            printStream.flush();
+        } catch (UncheckedIOException e) {
+            log.warn("Flame graph {} not sent: {}", title, e.getCause().getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("Fatal error", e);
             throw new RuntimeException(e);
         }
     }
+
+    private FlameGraph createFlameGraph(Arguments arguments, JfrCollapsedSamples collapsedSamples) {
+        int parts = Math.min(parallelism, collapsedSamples.size() / MIN_ROWS_PER_PART);
+        if (parts <= 1) {
+            FlameGraph flameGraph = new FlameGraph(arguments);
+            collapsedSamples.forEach(new CollapsedSamplesFeeder(flameGraph, collapsedSamples.isWithLineNumbers()));
+            return flameGraph;
+        }
+        return IntStream.range(0, parts).parallel()
+                .mapToObj(part -> {
+                    FlameGraph partialFlameGraph = new FlameGraph(arguments);
+                    collapsedSamples.forEach(part, parts, new CollapsedSamplesFeeder(partialFlameGraph, collapsedSamples.isWithLineNumbers()));
+                    return partialFlameGraph;
+                })
+                .reduce((flameGraph, other) -> {
+                    flameGraph.merge(other);
+                    return flameGraph;
+                })
+                .orElseThrow();
+    }
+
+    /**
+     * PrintStream swallows IOExceptions, rethrown unchecked they stop rendering as soon as the client is gone.
+     */
+    private static class FailingOutputStream extends FilterOutputStream {
+        FailingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class CollapsedSamplesFeeder implements JfrCollapsedSamples.RowConsumer {
+        private final FlameGraph flameGraph;
+        private final boolean withLineNumbers;
+        private final CallStack stack = new CallStack();
+        private final Map<Long, FrameTitle> frameWithLineNumberTitles = new HashMap<>();
+        private final Map<String, FrameTitle[]> prefixTitles = new HashMap<>();
+        private final Map<String, FrameTitle> leafTitles = new HashMap<>();
+        private FrameTitle[] frameTitles = new FrameTitle[1024];
+
+        @Override
+        public void accept(String prefix, JfrStackTrace stackTrace, String leafFrame, long count) {
+            if (prefix != null) {
+                for (FrameTitle title : prefixTitles.computeIfAbsent(prefix, CollapsedSamplesFeeder::splitPrefix)) {
+                    stack.push(title);
+                }
+            }
+            for (int i = 0; i < stackTrace.getDepth(); i++) {
+                stack.push(getFrameTitle(stackTrace, i));
+            }
+            if (leafFrame != null) {
+                stack.push(leafTitles.computeIfAbsent(leafFrame, FrameTitle::of));
+            }
+            flameGraph.addSample(stack, count);
+            stack.clear();
+        }
+
+        private FrameTitle getFrameTitle(JfrStackTrace stackTrace, int index) {
+            int frameId = stackTrace.getFrameId(index);
+            int lineNumber = stackTrace.getLineNumber(index);
+            if (withLineNumbers && lineNumber >= 0) {
+                return frameWithLineNumberTitles.computeIfAbsent(((long) frameId << 32) | lineNumber,
+                        ignored -> FrameTitle.of(stackTrace.getFrame(index, true)));
+            }
+            if (frameId >= frameTitles.length) {
+                frameTitles = Arrays.copyOf(frameTitles, Math.max(frameId + 1, frameTitles.length * 2));
+            }
+            FrameTitle title = frameTitles[frameId];
+            if (title == null) {
+                title = FrameTitle.of(stackTrace.getFrame(index));
+                frameTitles[frameId] = title;
+            }
+            return title;
+        }
+
+        private static FrameTitle[] splitPrefix(String prefix) {
+            List<FrameTitle> titles = new ArrayList<>();
+            for (int from = 0, to; (to = prefix.indexOf(';', from)) >= 0; from = to + 1) {
+                titles.add(FrameTitle.of(prefix.substring(from, to)));
+            }
+            return titles.toArray(FrameTitle[]::new);
+        }
+    }
 }
@@ -5,9 +5,11 @@
 
 package pl.ks.viewer.flamegraph;
 
-import java.util.HashMap;
-
-public class Frame extends HashMap<Integer, Frame> {
+/**
+ * Node of the flame graph tree. Children are kept in an open addressing table keyed by the int frame key, so no
+ * map entries nor boxed keys are allocated per node.
+ */
+public class Frame {
     public static final byte TYPE_INTERPRETED = 0;
     public static final byte TYPE_JIT_COMPILED = 1;
     public static final byte TYPE_INLINED = 2;
@@ -17,11 +19,14 @@ public class Frame extends HashMap<Integer, Frame> {
     public static final byte TYPE_C1_COMPILED = 6;
 
     private static final int TYPE_SHIFT = 28;
+    private static final Frame[] NO_CHILDREN = {};
 
     final int key;
     long total;
     long self;
     long inlined, c1, interpreted;
+    private Frame[] children = NO_CHILDREN;
+    private int childCount;
 
     private Frame(int key) {
         this.key = key;
@@ -32,13 +37,83 @@ public class Frame extends HashMap<Integer, Frame> {
     }
 
     Frame getChild(int titleIndex, byte type) {
-        return super.computeIfAbsent(titleIndex | type << TYPE_SHIFT, Frame::new);
+        int key = titleIndex | type << TYPE_SHIFT;
+        if (children.length > 0) {
+            int mask = children.length - 1;
+            for (int i = hash(key) & mask; children[i] != null; i = (i + 1) & mask) {
+                if (children[i].key == key) {
+                    return children[i];
+                }
+            }
+        }
+        Frame child = new Frame(key);
+        putChild(child);
+        return child;
+    }
+
+    void putChild(Frame child) {
+        if ((childCount + 1) * 4 > children.length * 3) {
+            resize(Math.max(2, children.length * 2));
+        }
+        int mask = children.length - 1;
+        int i = hash(child.key) & mask;
+        while (children[i] != null) {
+            if (children[i].key == child.key) {
+                children[i] = child;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        children[i] = child;
+        childCount++;
+    }
+
+    private void resize(int capacity) {
+        Frame[] oldChildren = children;
+        children = new Frame[capacity];
+        int mask = capacity - 1;
+        for (Frame child : oldChildren) {
+            if (child != null) {
+                int i = hash(child.key) & mask;
+                while (children[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                children[i] = child;
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    boolean isEmpty() {
+        return childCount == 0;
+    }
+
+    Frame[] getChildren() {
+        if (childCount == children.length) {
+            return children.clone();
+        }
+        Frame[] result = new Frame[childCount];
+        int size = 0;
+        for (Frame child : children) {
+            if (child != null) {
+                result[size++] = child;
+            }
+        }
+        return result;
     }
 
     int getTitleIndex() {
         return key & ((1 << TYPE_SHIFT) - 1);
     }
 
+    byte getKeyType() {
+        return (byte) (key >>> TYPE_SHIFT);
+    }
+
     byte getType() {
         if (inlined * 3 >= total) {
             return TYPE_INLINED;
@@ -47,17 +122,41 @@ public class Frame extends HashMap<Integer, Frame> {
         } else if (interpreted * 2 >= total) {
             return TYPE_INTERPRETED;
         } else {
-            return (byte) (key >>> TYPE_SHIFT);
+            return getKeyType();
+        }
+    }
+
+    void prune(long cutoff, int otherTitleIndex) {
+        if (childCount == 0) {
+            return;
+        }
+        Frame[] oldChildren = children;
+        long prunedTotal = 0;
+        children = NO_CHILDREN;
+        childCount = 0;
+        for (Frame child : oldChildren) {
+            if (child == null) {
+                continue;
+            }
+            if (child.total >= cutoff) {
+                child.prune(cutoff, otherTitleIndex);
+                putChild(child);
+            } else {
+                prunedTotal += child.total;
+            }
+        }
+        if (prunedTotal > 0) {
+            Frame other = getChild(otherTitleIndex, TYPE_NATIVE);
+            other.total += prunedTotal;
+            other.self += prunedTotal;
         }
     }
 
     int depth(long cutoff) {
         int depth = 0;
-        if (size() > 0) {
-            for (Frame child : values()) {
-                if (child.total >= cutoff) {
-                    depth = Math.max(depth, child.depth(cutoff));
-                }
+        for (Frame child : children) {
+            if (child != null && child.total >= cutoff) {
+                depth = Math.max(depth, child.depth(cutoff));
             }
         }
         return depth + 1;
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2022 Krzysztof Slusarski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.ks.viewer.flamegraph;
+
+/**
+ * Frame name with the type suffix (like {@code _[j]}) already stripped, so callers pushing the same frame many times
+ * can detect its type once.
+ */
+public record FrameTitle(String name, byte type) {
+    public static FrameTitle of(String title) {
+        byte type = FlameGraph.detectType(title);
+        if ((type & FlameGraph.HAS_SUFFIX) != 0) {
+            return new FrameTitle(title.substring(0, title.length() - 4), (byte) (type ^ FlameGraph.HAS_SUFFIX));
+        }
+        return new FrameTitle(title, type);
+    }
+}